@@ -21,9 +21,15 @@ public class SilentObjectCreator {
         if (paramValues == null) {
             paramValues = new Object[0];
         }
+        return clazz.cast(allocator(clazz, parent, paramTypes).newInstance(paramValues));
+    }
+
+    /**
+     * @return constructor creating instances of the class by running only the given constructor of the parent
+     */
+    public static Constructor<?> allocator(Class<?> clazz, Class<?> parent, Class<?>... paramTypes) throws NoSuchMethodException {
         ReflectionFactory rf = ReflectionFactory.getReflectionFactory();
         Constructor objDef = parent.getDeclaredConstructor(paramTypes);
-        Constructor intConstr = rf.newConstructorForSerialization(clazz, objDef);
-        return clazz.cast(intConstr.newInstance(paramValues));
+        return rf.newConstructorForSerialization(clazz, objDef);
     }
 }
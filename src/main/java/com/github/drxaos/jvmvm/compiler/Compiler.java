@@ -3,9 +3,23 @@ package com.github.drxaos.jvmvm.compiler;
 import com.github.drxaos.jvmvm.loader.ProjectCompilerException;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 public interface Compiler extends Serializable {
     Map<String, byte[]> compile(Map<String, String> files, List<String> systemClasses, List<byte[]> jars) throws ProjectCompilerException;
+
+    /**
+     * Compiles files against already compiled classes (class name to bytecode), used for incremental builds.
+     * Compilers without a direct way to add class inputs get them packed into an extra jar.
+     */
+    default Map<String, byte[]> compile(Map<String, String> files, List<String> systemClasses, List<byte[]> jars, Map<String, byte[]> classpath) throws ProjectCompilerException {
+        if (classpath.isEmpty()) {
+            return compile(files, systemClasses, jars);
+        }
+        List<byte[]> allJars = new ArrayList<byte[]>(jars);
+        allJars.add(JarUtil.pack(classpath));
+        return compile(files, systemClasses, allJars);
+    }
 }
@@ -0,0 +1,62 @@
+package com.github.drxaos.jvmvm.compiler;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable contents of a jar, shared by every project and compiler using a jar with the same bytes.
+ *
+ * @see JarRegistry
+ */
+public final class JarIndex {
+    private final String digest;
+    private final Map<String, byte[]> entries;
+    private final Map<String, byte[]> classes;
+    private final Set<String> packages;
+
+    JarIndex(String digest, Map<String, byte[]> entries) {
+        this.digest = digest;
+        this.entries = Collections.unmodifiableMap(entries);
+        Map<String, byte[]> classes = new HashMap<String, byte[]>();
+        Set<String> packages = new HashSet<String>();
+        for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+            String path = e.getKey();
+            classes.put(path.replaceFirst("\\.class$", "").replace("/", "."), e.getValue());
+            for (int i = path.lastIndexOf('/'); i > 0; i = path.lastIndexOf('/', i - 1)) {
+                if (!packages.add(path.substring(0, i).replace("/", "."))) {
+                    break;
+                }
+            }
+        }
+        this.classes = Collections.unmodifiableMap(classes);
+        this.packages = Collections.unmodifiableSet(packages);
+    }
+
+    public String getDigest() {
+        return digest;
+    }
+
+    /**
+     * @return entry bytes by path inside the jar ("a/b/C.class")
+     */
+    public Map<String, byte[]> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return entry bytes by class name ("a.b.C")
+     */
+    public Map<String, byte[]> getClasses() {
+        return classes;
+    }
+
+    /**
+     * @return names of all packages with entries, including parent packages
+     */
+    public Set<String> getPackages() {
+        return packages;
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.drxaos.jvmvm.compiler;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Process-wide registry of jars keyed by content hash.
+ * A jar is unpacked once, and projects holding the same jar bytes share one canonical byte array and one index.
+ * Entries live as long as some project references the jar bytes.
+ */
+public class JarRegistry {
+
+    private static final Map<String, WeakReference<byte[]>> canonical = new HashMap<String, WeakReference<byte[]>>();
+    private static final Map<byte[], String> digests = new WeakHashMap<byte[], String>();
+    private static final Map<byte[], JarIndex> indexes = new WeakHashMap<byte[], JarIndex>();
+
+    private JarRegistry() {
+    }
+
+    /**
+     * @return the registered byte array with the same content, the jar itself if it is new
+     */
+    public static synchronized byte[] intern(byte[] jar) {
+        if (digests.containsKey(jar)) {
+            return jar;
+        }
+        String digest = DigestUtils.shaHex(jar);
+        WeakReference<byte[]> ref = canonical.get(digest);
+        byte[] existing = ref == null ? null : ref.get();
+        if (existing != null) {
+            return existing;
+        }
+        canonical.values().removeIf(r -> r.get() == null);
+        canonical.put(digest, new WeakReference<byte[]>(jar));
+        digests.put(jar, digest);
+        return jar;
+    }
+
+    public static JarIndex get(byte[] jar) {
+        byte[] key;
+        String digest;
+        synchronized (JarRegistry.class) {
+            key = intern(jar);
+            JarIndex index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            digest = digests.get(key);
+        }
+        // unpack outside of the lock, a concurrently built duplicate is dropped
+        JarIndex index = new JarIndex(digest, JarUtil.unpack(key));
+        synchronized (JarRegistry.class) {
+            JarIndex existing = indexes.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            indexes.put(key, index);
+            return index;
+        }
+    }
+}
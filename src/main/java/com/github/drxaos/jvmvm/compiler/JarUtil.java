@@ -9,6 +9,8 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
 
 public class JarUtil {
 
@@ -32,4 +34,21 @@ public class JarUtil {
         }
         return classes;
     }
+
+    public static byte[] pack(Map<String, byte[]> classes) {
+        try {
+            ByteArrayOutputStream b = new ByteArrayOutputStream();
+            JarOutputStream jar = new JarOutputStream(b, new Manifest());
+            for (Map.Entry<String, byte[]> e : classes.entrySet()) {
+                JarEntry jarAdd = new JarEntry(e.getKey().replace(".", "/") + ".class");
+                jarAdd.setTime(System.currentTimeMillis());
+                jar.putNextEntry(jarAdd);
+                jar.write(e.getValue());
+            }
+            jar.close();
+            return b.toByteArray();
+        } catch (IOException e) {
+            throw new ProjectCompilerException("jar pack error", e);
+        }
+    }
 }
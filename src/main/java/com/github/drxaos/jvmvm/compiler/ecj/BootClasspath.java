@@ -0,0 +1,137 @@
+package com.github.drxaos.jvmvm.compiler.ecj;
+
+import org.eclipse.jdt.internal.compiler.batch.FileSystem;
+import org.eclipse.jdt.internal.compiler.batch.Main;
+import org.eclipse.jdt.internal.compiler.env.NameEnvironmentAnswer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/**
+ * Bootclasspath of the running VM, opened once and shared by all compilations.
+ */
+final class BootClasspath {
+
+    private BootClasspath() {
+    }
+
+    private static class Holder {
+        static final FileSystem fileSystem = open();
+    }
+
+    private static FileSystem open() {
+        ArrayList<FileSystem.Classpath> cp = new ArrayList<FileSystem.Classpath>();
+        ArrayList<String> cps = new ArrayList<String>();
+        collectRunningVMBootclasspath(cp);
+        for (FileSystem.Classpath classpath : cp) {
+            cps.add(classpath.getPath());
+        }
+        return new FileSystem(cps.toArray(new String[cps.size()]), null, null);
+    }
+
+    /**
+     * @return true if the (possibly empty) package name starts with the "java" package
+     */
+    static boolean isJavaPackage(char[][] packageName) {
+        if (packageName == null || packageName.length == 0) {
+            return false;
+        }
+        char[] first = packageName[0];
+        return first.length == 4 && first[0] == 'j' && first[1] == 'a' && first[2] == 'v' && first[3] == 'a';
+    }
+
+    // FileSystem caches packages lazily and is not thread-safe
+
+    static synchronized NameEnvironmentAnswer findType(char[][] compoundTypeName) {
+        return Holder.fileSystem.findType(compoundTypeName);
+    }
+
+    static synchronized NameEnvironmentAnswer findType(char[] typeName, char[][] packageName) {
+        return Holder.fileSystem.findType(typeName, packageName);
+    }
+
+    static synchronized boolean isPackage(char[][] parentPackageName, char[] packageName) {
+        return Holder.fileSystem.isPackage(parentPackageName, packageName);
+    }
+
+    public static void collectRunningVMBootclasspath(List bootclasspaths) {
+        /* no bootclasspath specified
+		 * we can try to retrieve the default librairies of the VM used to run
+		 * the batch compiler
+		 */
+        String javaversion = System.getProperty("java.version");//$NON-NLS-1$
+        if (javaversion != null && javaversion.equalsIgnoreCase("1.1.8")) { //$NON-NLS-1$
+            throw new IllegalStateException();
+        }
+
+		/*
+		 * Handle >= JDK 1.2.2 settings: retrieve the bootclasspath
+		 */
+        // check bootclasspath properties for Sun, JRockit and Harmony VMs
+        String bootclasspathProperty = System.getProperty("sun.boot.class.path"); //$NON-NLS-1$
+        if ((bootclasspathProperty == null) || (bootclasspathProperty.length() == 0)) {
+            // IBM J9 VMs
+            bootclasspathProperty = System.getProperty("vm.boot.class.path"); //$NON-NLS-1$
+            if ((bootclasspathProperty == null) || (bootclasspathProperty.length() == 0)) {
+                // Harmony using IBM VME
+                bootclasspathProperty = System.getProperty("org.apache.harmony.boot.class.path"); //$NON-NLS-1$
+            }
+        }
+        if ((bootclasspathProperty != null) && (bootclasspathProperty.length() != 0)) {
+            StringTokenizer tokenizer = new StringTokenizer(bootclasspathProperty, File.pathSeparator);
+            String token;
+            while (tokenizer.hasMoreTokens()) {
+                token = tokenizer.nextToken();
+                FileSystem.Classpath currentClasspath = FileSystem.getClasspath(token, null, null);
+                if (currentClasspath != null) {
+                    bootclasspaths.add(currentClasspath);
+                }
+            }
+        } else {
+            // try to get all jars inside the lib folder of the java home
+            final File javaHome = getJavaHome();
+            if (javaHome != null) {
+                File[] directoriesToCheck = null;
+                if (System.getProperty("os.name").startsWith("Mac")) {//$NON-NLS-1$//$NON-NLS-2$
+                    directoriesToCheck = new File[]{
+                            new File(javaHome, "../Classes"), //$NON-NLS-1$
+                    };
+                } else {
+                    // fall back to try to retrieve them out of the lib directory
+                    directoriesToCheck = new File[]{
+                            new File(javaHome, "lib") //$NON-NLS-1$
+                    };
+                }
+                File[][] systemLibrariesJars = Main.getLibrariesFiles(directoriesToCheck);
+                if (systemLibrariesJars != null) {
+                    for (int i = 0, max = systemLibrariesJars.length; i < max; i++) {
+                        File[] current = systemLibrariesJars[i];
+                        if (current != null) {
+                            for (int j = 0, max2 = current.length; j < max2; j++) {
+                                FileSystem.Classpath classpath =
+                                        FileSystem.getClasspath(current[j].getAbsolutePath(),
+                                                null, false, null, null);
+                                if (classpath != null) {
+                                    bootclasspaths.add(classpath);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public static File getJavaHome() {
+        String javaHome = System.getProperty("java.home");//$NON-NLS-1$
+        if (javaHome != null) {
+            File javaHomeFile = new File(javaHome);
+            if (javaHomeFile.exists()) {
+                return javaHomeFile;
+            }
+        }
+        return null;
+    }
+}
@@ -1,6 +1,7 @@
 package com.github.drxaos.jvmvm.compiler.ecj;
 
-import com.github.drxaos.jvmvm.compiler.JarUtil;
+import com.github.drxaos.jvmvm.compiler.JarIndex;
+import com.github.drxaos.jvmvm.compiler.JarRegistry;
 import com.github.drxaos.jvmvm.loader.ProjectCompilerException;
 import org.apache.commons.io.IOUtils;
 import org.eclipse.jdt.core.compiler.CategorizedProblem;
@@ -28,10 +29,9 @@ public class JavaEclipseCompiler implements com.github.drxaos.jvmvm.compiler.Com
         final Map<String, byte[]> res = new HashMap<String, byte[]>();
         final Map<String, byte[]> classpath = new HashMap<String, byte[]>();
 
+        final List<JarIndex> jarIndexes = new ArrayList<JarIndex>();
         for (byte[] jar : jars) {
-            for (Map.Entry<String, byte[]> e : JarUtil.unpack(jar).entrySet()) {
-                classpath.put(e.getKey(), e.getValue());
-            }
+            jarIndexes.add(JarRegistry.get(jar));
         }
         for (String systemClass : systemClasses) {
             String path = systemClass.replace(".", "/") + ".class";
@@ -48,7 +48,7 @@ public class JavaEclipseCompiler implements com.github.drxaos.jvmvm.compiler.Com
             }
         }
 
-        INameEnvironment env = new NameEnv(files, classpath);
+        INameEnvironment env = new NameEnv(files, classpath, jarIndexes);
         ICompilerRequestor requestor = new ICompilerRequestor() {
             @Override
             public void acceptResult(CompilationResult result) {
@@ -1,41 +1,61 @@
 package com.github.drxaos.jvmvm.compiler.javac;
 
 import com.github.drxaos.jvmvm.loader.ProjectCompilerException;
-import com.github.drxaos.jvmvm.compiler.JarUtil;
-import com.sun.tools.javac.api.JavacTool;
-import org.apache.commons.io.IOUtils;
 
 import javax.tools.DiagnosticCollector;
 import javax.tools.FileObject;
 import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class JavaCompiler implements com.github.drxaos.jvmvm.compiler.Compiler {
+    private static final long serialVersionUID = 8430713769543498512L;
+
     public Map<String, byte[]> compile(Map<String, String> files, List<String> systemClasses, List<byte[]> jars) throws ProjectCompilerException {
-        javax.tools.JavaCompiler compiler = JavacTool.create();
-        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
-        ClassFileManager fileManager = new ClassFileManager(compiler.getStandardFileManager(null, null, null), files, jars);
-        fileManager.addSources(files);
-        for (byte[] jar : jars) {
-            for (Map.Entry<String, byte[]> e : JarUtil.unpack(jar).entrySet()) {
-                fileManager.addClassInput(e.getKey(), e.getKey().replaceFirst("\\.class$", "").replace("/", "."), e.getValue());
+        return compile(files, systemClasses, jars, Collections.<String, byte[]>emptyMap());
+    }
+
+    @Override
+    public Map<String, byte[]> compile(Map<String, String> files, List<String> systemClasses, List<byte[]> jars, Map<String, byte[]> classpath) throws ProjectCompilerException {
+        StandardJavaFileManager standardManager = JavacPool.borrowFileManager();
+        boolean reusable = false;
+        try {
+            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+            ClassFileManager fileManager = new ClassFileManager(standardManager, files, jars);
+            fileManager.addSources(files);
+            for (byte[] jar : jars) {
+                for (MemoryJavaFile input : JavacPool.getJarInputs(jar)) {
+                    fileManager.addInput(input);
+                }
             }
-        }
-        for (String systemClass : systemClasses) {
-            try {
-                String path = systemClass.replace(".", "/") + ".class";
-                byte[] b = IOUtils.toByteArray(Class.forName(systemClass).getClassLoader().getResourceAsStream(path));
-                fileManager.addClassInput(path, systemClass, b);
-            } catch (Exception e) {
-                // don't add
+            for (String systemClass : systemClasses) {
+                MemoryJavaFile input = JavacPool.getSystemClassInput(systemClass);
+                if (input != null) {
+                    fileManager.addInput(input);
+                }
+            }
+            for (Map.Entry<String, byte[]> e : classpath.entrySet()) {
+                fileManager.addClassInput(MemoryFileManager.getSimplePathForClass(e.getKey(), "class"), e.getKey(), e.getValue());
+            }
+            Boolean res = JavacPool.getTool().getTask(null, fileManager, diagnostics, null, null, fileManager.getSourceObjects()).call();
+            reusable = true;
+            if (!res) {
+                throw new ProjectCompilerException("compilation errors", diagnostics.getDiagnostics());
+            }
+            return collectClasses(fileManager);
+        } finally {
+            if (reusable) {
+                JavacPool.releaseFileManager(standardManager);
+            } else {
+                JavacPool.discardFileManager(standardManager);
             }
         }
-        Boolean res = compiler.getTask(null, fileManager, diagnostics, null, null, fileManager.getSourceObjects()).call();
-        if (!res) {
-            throw new ProjectCompilerException("compilation errors", diagnostics.getDiagnostics());
-        }
+    }
+
+    private Map<String, byte[]> collectClasses(ClassFileManager fileManager) {
         Map<String, FileObject> jclassObjectMap = fileManager.getJclassObjectMap();
         Map<String, byte[]> classes = new HashMap<String, byte[]>();
         for (Map.Entry<String, FileObject> e : jclassObjectMap.entrySet()) {
@@ -0,0 +1,115 @@
+package com.github.drxaos.jvmvm.compiler.javac;
+
+import com.github.drxaos.jvmvm.compiler.JarIndex;
+import com.github.drxaos.jvmvm.compiler.JarRegistry;
+import com.sun.tools.javac.api.JavacTool;
+import org.apache.commons.io.IOUtils;
+
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide javac state shared by all {@link JavaCompiler} instances.
+ * <p/>
+ * A javac task itself is single-use, so the pool keeps the expensive parts that can be reused:
+ * the tool, warmed standard file managers (with their platform class path already indexed)
+ * and class inputs for system classes and jars, which are built once and never modified.
+ */
+class JavacPool {
+
+    private static final int MAX_IDLE_FILE_MANAGERS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static final javax.tools.JavaCompiler tool = JavacTool.create();
+
+    private static final ConcurrentLinkedQueue<StandardJavaFileManager> idleFileManagers = new ConcurrentLinkedQueue<StandardJavaFileManager>();
+    private static final AtomicInteger idleCount = new AtomicInteger();
+
+    private static final ConcurrentHashMap<String, MemoryJavaFile> systemClassInputs = new ConcurrentHashMap<String, MemoryJavaFile>();
+    private static final Map<JarIndex, List<MemoryJavaFile>> jarInputs = new WeakHashMap<JarIndex, List<MemoryJavaFile>>();
+
+    private JavacPool() {
+    }
+
+    static javax.tools.JavaCompiler getTool() {
+        return tool;
+    }
+
+    static StandardJavaFileManager borrowFileManager() {
+        StandardJavaFileManager fm = idleFileManagers.poll();
+        if (fm == null) {
+            return tool.getStandardFileManager(null, null, null);
+        }
+        idleCount.decrementAndGet();
+        return fm;
+    }
+
+    static void releaseFileManager(StandardJavaFileManager fm) {
+        if (idleCount.incrementAndGet() <= MAX_IDLE_FILE_MANAGERS) {
+            idleFileManagers.offer(fm);
+        } else {
+            idleCount.decrementAndGet();
+            discardFileManager(fm);
+        }
+    }
+
+    static void discardFileManager(StandardJavaFileManager fm) {
+        try {
+            fm.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * @return class input for a system class or null if its bytecode is not available
+     */
+    static MemoryJavaFile getSystemClassInput(String systemClass) {
+        MemoryJavaFile mjf = systemClassInputs.get(systemClass);
+        if (mjf != null) {
+            return mjf;
+        }
+        try {
+            String path = systemClass.replace(".", "/") + ".class";
+            InputStream in = Class.forName(systemClass).getClassLoader().getResourceAsStream(path);
+            try {
+                mjf = new MemoryJavaFile("file:///" + path, systemClass, IOUtils.toByteArray(in), JavaFileObject.Kind.CLASS);
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+        } catch (Exception e) {
+            return null;
+        }
+        MemoryJavaFile prev = systemClassInputs.putIfAbsent(systemClass, mjf);
+        return prev != null ? prev : mjf;
+    }
+
+    /**
+     * @return class inputs for all entries of the jar, shared by all jars registered with the same content
+     */
+    static List<MemoryJavaFile> getJarInputs(byte[] jar) {
+        JarIndex index = JarRegistry.get(jar);
+        synchronized (jarInputs) {
+            List<MemoryJavaFile> list = jarInputs.get(index);
+            if (list != null) {
+                return list;
+            }
+            list = new ArrayList<MemoryJavaFile>();
+            for (Map.Entry<String, byte[]> e : index.getEntries().entrySet()) {
+                list.add(new MemoryJavaFile("file:///" + e.getKey(), e.getKey().replaceFirst("\\.class$", "").replace("/", "."), e.getValue(), JavaFileObject.Kind.CLASS));
+            }
+            list = Collections.unmodifiableList(list);
+            jarInputs.put(index, list);
+            return list;
+        }
+    }
+}
@@ -27,10 +27,7 @@ import javax.tools.JavaFileObject;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 
 public class MemoryFileManager extends ForwardingJavaFileManager<JavaFileManager> {
@@ -39,6 +36,9 @@ public class MemoryFileManager extends ForwardingJavaFileManager<JavaFileManager
     public final Map<String, MemoryJavaFile> inputs = new HashMap<String, MemoryJavaFile>();
     public final Map<String, FileObject> outputs = new HashMap<String, FileObject>();
 
+    // inputs by package path ("a/b/") and kind, kept in sync with inputs
+    private final Map<String, Map<JavaFileObject.Kind, Map<String, MemoryJavaFile>>> packages = new HashMap<String, Map<JavaFileObject.Kind, Map<String, MemoryJavaFile>>>();
+
 
     public MemoryFileManager(JavaFileManager fm) {
         super(fm);
@@ -50,17 +50,56 @@ public class MemoryFileManager extends ForwardingJavaFileManager<JavaFileManager
         }
 
         MemoryJavaFile mjf = new MemoryJavaFile(path, className, content, JavaFileObject.Kind.CLASS);
-        inputs.put(path, mjf);
+        putInput(path, mjf);
         return mjf;
     }
 
+    public MemoryJavaFile addInput(MemoryJavaFile mjf) {
+        putInput(mjf.getPath(), mjf);
+        return mjf;
+    }
+
+    private void putInput(String path, MemoryJavaFile mjf) {
+        MemoryJavaFile old = inputs.put(path, mjf);
+        if (old != null) {
+            Map<String, MemoryJavaFile> files = getPackageFiles(getPackagePath(old.getPath()), old.getKind(), false);
+            if (files != null) {
+                files.remove(path);
+            }
+        }
+        getPackageFiles(getPackagePath(path), mjf.getKind(), true).put(path, mjf);
+    }
+
+    private Map<String, MemoryJavaFile> getPackageFiles(String packagePath, JavaFileObject.Kind kind, boolean create) {
+        Map<JavaFileObject.Kind, Map<String, MemoryJavaFile>> kinds = packages.get(packagePath);
+        if (kinds == null) {
+            if (!create) {
+                return null;
+            }
+            packages.put(packagePath, kinds = new EnumMap<JavaFileObject.Kind, Map<String, MemoryJavaFile>>(JavaFileObject.Kind.class));
+        }
+        Map<String, MemoryJavaFile> files = kinds.get(kind);
+        if (files == null && create) {
+            kinds.put(kind, files = new LinkedHashMap<String, MemoryJavaFile>());
+        }
+        return files;
+    }
+
+    private static String getPackagePath(String path) {
+        try {
+            return FilenameUtils.getPath(new URI(path).getPath());
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public MemoryJavaFile addSourceInput(String path, String className, String content) {
         if (!path.startsWith("file:///")) {
             path = "file:///" + path;
         }
 
         MemoryJavaFile mjf = new MemoryJavaFile(path, className, content, JavaFileObject.Kind.SOURCE);
-        inputs.put(path, mjf);
+        putInput(path, mjf);
         return mjf;
     }
 
@@ -69,19 +108,16 @@ public class MemoryFileManager extends ForwardingJavaFileManager<JavaFileManager
         if (packageName.startsWith("java.")) {
             return super.list(location, packageName, kinds, recurse);
         }
+        Map<JavaFileObject.Kind, Map<String, MemoryJavaFile>> files = packages.get(packageName.replace(".", "/") + "/");
+        if (files == null) {
+            return Collections.emptyList();
+        }
+
+        // a copy, javac may add sources through getJavaFileForOutput while it iterates
         ArrayList<JavaFileObject> list = new ArrayList<JavaFileObject>();
-        for (Map.Entry<String, MemoryJavaFile> e : inputs.entrySet()) {
-            try {
-                MemoryJavaFile f = e.getValue();
-                String p = new URI(f.getPath()).getPath();
-                String path = FilenameUtils.getPath(p);
-                String name = FilenameUtils.getBaseName(p);
-                String ext = FilenameUtils.getExtension(p);
-                if (kinds.contains(f.getKind()) && (packageName.replace(".", "/") + "/").equals(path)) {
-                    list.add(f);
-                }
-            } catch (URISyntaxException e1) {
-                throw new RuntimeException(e1);
+        for (Map.Entry<JavaFileObject.Kind, Map<String, MemoryJavaFile>> e : files.entrySet()) {
+            if (kinds.contains(e.getKey())) {
+                list.addAll(e.getValue().values());
             }
         }
         return list;
@@ -150,7 +186,7 @@ public class MemoryFileManager extends ForwardingJavaFileManager<JavaFileManager
         if (kind == JavaFileObject.Kind.CLASS) {
             outputs.put(getFullPathForClass(className, "class"), jo = new MemoryJavaFile(getFullPathForClass(className, "class"), className, (String) null, kind));
         } else if (kind == JavaFileObject.Kind.SOURCE) {
-            inputs.put(getFullPathForClass(className, "java"), jo = new MemoryJavaFile(getFullPathForClass(className, "java"), className, (String) null, kind));
+            putInput(getFullPathForClass(className, "java"), jo = new MemoryJavaFile(getFullPathForClass(className, "java"), className, (String) null, kind));
         }
 
         return jo == null ? super.getJavaFileForInput(location, className, kind) : jo;
@@ -0,0 +1,159 @@
+package com.github.drxaos.jvmvm.loader;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
+
+import java.util.*;
+
+/**
+ * Source files and class references of a compilation result.
+ * Used to find the files that have to be recompiled when some of the project files change.
+ */
+class ClassDependencies {
+    final Map<String, String> classFiles = new HashMap<String, String>();
+    final Map<String, Set<String>> references = new HashMap<String, Set<String>>();
+    final Set<String> constantHolders = new HashSet<String>();
+    final Set<String> inputClasses;
+    boolean complete = true;
+
+    ClassDependencies(Map<String, byte[]> classes, Set<String> files, Set<String> inputClasses) {
+        this.inputClasses = inputClasses;
+        add(classes, files);
+    }
+
+    void add(Map<String, byte[]> classes, Set<String> files) {
+        for (Map.Entry<String, byte[]> e : classes.entrySet()) {
+            if (!inputClasses.contains(e.getKey()) && !classFiles.containsKey(e.getKey())) {
+                scan(e.getKey(), e.getValue(), files);
+            }
+        }
+    }
+
+    void remove(Collection<String> classNames) {
+        for (String className : classNames) {
+            classFiles.remove(className);
+            references.remove(className);
+            constantHolders.remove(className);
+        }
+    }
+
+    Set<String> classesOf(Collection<String> files) {
+        Set<String> result = new HashSet<String>();
+        for (Map.Entry<String, String> e : classFiles.entrySet()) {
+            if (files.contains(e.getValue())) {
+                result.add(e.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return changed files and files of all classes depending on them, or null if everything has to be recompiled
+     */
+    Set<String> affectedFiles(Set<String> changedFiles) {
+        if (!complete) {
+            return null;
+        }
+        Set<String> changedClasses = classesOf(changedFiles);
+        for (String className : changedClasses) {
+            if (constantHolders.contains(className)) {
+                // constants are inlined by the compiler and leave no references behind
+                return null;
+            }
+        }
+
+        Map<String, Set<String>> dependents = new HashMap<String, Set<String>>();
+        for (Map.Entry<String, Set<String>> e : references.entrySet()) {
+            for (String ref : e.getValue()) {
+                Set<String> set = dependents.get(ref);
+                if (set == null) {
+                    dependents.put(ref, set = new HashSet<String>());
+                }
+                set.add(e.getKey());
+            }
+        }
+
+        Set<String> affectedClasses = new HashSet<String>(changedClasses);
+        LinkedList<String> queue = new LinkedList<String>(changedClasses);
+        while (!queue.isEmpty()) {
+            Set<String> set = dependents.get(queue.removeFirst());
+            if (set != null) {
+                for (String dependent : set) {
+                    if (affectedClasses.add(dependent)) {
+                        queue.add(dependent);
+                    }
+                }
+            }
+        }
+
+        Set<String> result = new HashSet<String>(changedFiles);
+        for (String className : affectedClasses) {
+            result.add(classFiles.get(className));
+        }
+        return result;
+    }
+
+    private void scan(String className, byte[] bytecode, Set<String> files) {
+        final Set<String> refs = new HashSet<String>();
+        final String[] source = new String[1];
+        final boolean[] constants = new boolean[1];
+        ClassVisitor collector = new ClassVisitor(Opcodes.ASM5) {
+            @Override
+            public void visitSource(String file, String debug) {
+                source[0] = file;
+            }
+
+            @Override
+            public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+                if (value != null) {
+                    constants[0] = true;
+                }
+                return null;
+            }
+        };
+        new ClassReader(bytecode).accept(new ClassRemapper(collector, new Remapper() {
+            @Override
+            public String map(String typeName) {
+                refs.add(typeName.replace('/', '.'));
+                return typeName;
+            }
+        }), ClassReader.SKIP_FRAMES);
+
+        String file = findFile(className, source[0], files);
+        if (file == null) {
+            complete = false;
+            return;
+        }
+        refs.remove(className);
+        classFiles.put(className, file);
+        references.put(className, refs);
+        if (constants[0]) {
+            constantHolders.add(className);
+        }
+    }
+
+    private static String findFile(String className, String source, Set<String> files) {
+        if (source == null) {
+            return null;
+        }
+        int i = className.lastIndexOf('.');
+        String path = i < 0 ? source : className.substring(0, i).replace('.', '/') + "/" + source;
+        if (files.contains(path)) {
+            return path;
+        }
+        String found = null;
+        for (String file : files) {
+            if (file.equals(source) || file.endsWith("/" + source)) {
+                if (found != null) {
+                    return null;
+                }
+                found = file;
+            }
+        }
+        return found;
+    }
+}
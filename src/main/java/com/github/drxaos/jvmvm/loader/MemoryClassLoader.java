@@ -1,7 +1,9 @@
 package com.github.drxaos.jvmvm.loader;
 
-import com.github.drxaos.jvmvm.compiler.JarUtil;
+import com.github.drxaos.jvmvm.compiler.JarIndex;
+import com.github.drxaos.jvmvm.compiler.JarRegistry;
 import org.objectweb.asm.*;
+import org.objectweb.asm.tree.MethodNode;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
@@ -11,6 +13,7 @@ import java.util.*;
 
 class RemapMethodVisitor extends MethodVisitor {
     Map<String, String> remapping;
+    boolean typesRemapped = false;
 
     public RemapMethodVisitor(MethodVisitor mv, Map<String, String> remapping) {
         super(Opcodes.ASM4, mv);
@@ -40,6 +43,8 @@ class RemapMethodVisitor extends MethodVisitor {
 
     public void visitTypeInsn(int opcode, String type) {
         if (remapping.keySet().contains(type)) {
+            // values on the stack change their type, recorded stack map frames may be wrong now
+            typesRemapped = true;
             mv.visitTypeInsn(opcode, remapping.get(type));
         } else {
             mv.visitTypeInsn(opcode, type);
@@ -51,9 +56,42 @@ class RemapMethodVisitor extends MethodVisitor {
     }
 }
 
+/**
+ * Buffers a remapped method and writes it to the target with its original frames,
+ * or with frames recomputed when remapping changed the types of values.
+ */
+class RemappedMethodNode extends MethodNode {
+    Modifier modifier;
+    MethodVisitor target;
+    RemapMethodVisitor remapper;
+
+    public RemappedMethodNode(Modifier modifier, MethodVisitor target, int access, String name, String desc, String signature, String[] exceptions) {
+        super(Opcodes.ASM5, access, name, desc, signature, exceptions);
+        this.modifier = modifier;
+        this.target = target;
+    }
+
+    @Override
+    public void visitEnd() {
+        super.visitEnd();
+        if (remapper.typesRemapped && modifier.hasFrames()) {
+            modifier.acceptWithComputedFrames(this, target);
+        } else {
+            accept(target);
+        }
+    }
+}
+
 class Modifier extends ClassVisitor {
     Map<String, String> remapping;
 
+    int version;
+    int access;
+    String name;
+    String signature;
+    String superName;
+    String[] interfaces;
+
     public Modifier(ClassVisitor cv, Map<String, String> remapping) {
         super(Opcodes.ASM4, cv);
         this.remapping = remapping;
@@ -71,12 +109,34 @@ class Modifier extends ClassVisitor {
         }
         access &= ~Opcodes.ACC_TRANSIENT;
         MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
-        if (null != mv) {
-            return new RemapMethodVisitor(mv, remapping);
+        if (null != mv && !remapping.isEmpty()) {
+            RemappedMethodNode node = new RemappedMethodNode(this, mv, access, name, desc, signature, exceptions);
+            return node.remapper = new RemapMethodVisitor(node, remapping);
         }
         return mv;
     }
 
+    boolean hasFrames() {
+        return (version & 0xFFFF) >= Opcodes.V1_6;
+    }
+
+    /**
+     * Computes frames of a single method in a scratch class and copies the result to the target.
+     */
+    void acceptWithComputedFrames(MethodNode method, final MethodVisitor target) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        cw.visit(version, access, name, signature, superName, interfaces);
+        method.accept(cw);
+        cw.visitEnd();
+        new ClassReader(cw.toByteArray()).accept(new ClassVisitor(Opcodes.ASM5) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+                return new MethodVisitor(Opcodes.ASM5, target) {
+                };
+            }
+        }, 0);
+    }
+
     @Override
     public void visitOuterClass(String owner, String name, String desc) {
         super.visitOuterClass(owner, name, desc);
@@ -90,6 +150,12 @@ class Modifier extends ClassVisitor {
             intf.add(serializable);
             interfaces = intf.toArray(new String[intf.size()]);
         }
+        this.version = version;
+        this.access = access;
+        this.name = name;
+        this.signature = signature;
+        this.superName = superName;
+        this.interfaces = interfaces;
         super.visit(version, access, name, signature, superName, interfaces);
     }
 
@@ -107,22 +173,87 @@ public class MemoryClassLoader extends SecureClassLoader {
     SystemClassesCallback systemClassesCallback = null;
 
     Map<String, byte[]> classes = new HashMap<String, byte[]>();
+    List<JarIndex> jars = new ArrayList<JarIndex>();
     Map<String, String> remapping = new HashMap<String, String>();
+    String remappingKey;
     boolean vmDisabled = false;
+    boolean registerTranslation = false;
+    boolean peepholeOptimization = false;
     Set<String> modifiedClasses = new HashSet<String>();
     ClassLoader fallbackClassLoader;
+    private final List<Class<?>> initializedClasses = new ArrayList<Class<?>>();
+    private final Map<Class<?>, Integer> initializedClassIndices = new HashMap<Class<?>, Integer>();
 
     public MemoryClassLoader(ClassLoader fallbackClassLoader, Map<String, byte[]> classes, List<byte[]> jars) {
         super(null);
         this.fallbackClassLoader = fallbackClassLoader;
         this.classes = classes;
         for (byte[] jar : jars) {
-            for (Map.Entry<String, byte[]> e : JarUtil.unpack(jar).entrySet()) {
-                classes.put(e.getKey().replaceFirst("\\.class$", "").replace("/", "."), e.getValue());
+            JarIndex index = JarRegistry.get(jar);
+            // jar classes are looked up in the shared index, they take precedence over compiled classes
+            classes.keySet().removeAll(index.getClasses().keySet());
+            this.jars.add(index);
+        }
+    }
+
+    /**
+     * @return bytecode of the class, empty for system classes, null for unknown classes
+     */
+    byte[] getClassBytes(String name) {
+        byte[] b = classes.get(name);
+        for (int i = jars.size() - 1; b == null && i >= 0; i--) {
+            b = jars.get(i).getClasses().get(name);
+        }
+        return b;
+    }
+
+    /**
+     * Takes over already transformed bytecode of unchanged classes from a loader of the previous build.
+     */
+    void reuseModifiedClasses(MemoryClassLoader previous, Collection<String> classNames) {
+        if (previous.vmDisabled != vmDisabled || !previous.remapping.equals(remapping)) {
+            return;
+        }
+        for (String name : classNames) {
+            if (previous.modifiedClasses.contains(name) && getClassBytes(name) != null) {
+                classes.put(name, previous.classes.get(name));
+                modifiedClasses.add(name);
             }
         }
     }
 
+    /**
+     * @return true if code of classes defined by this loader is decoded with register instructions
+     */
+    public boolean isRegisterTranslation() {
+        return registerTranslation;
+    }
+
+    /**
+     * @return true if code of classes defined by this loader is decoded with peephole optimizations
+     */
+    public boolean isPeepholeOptimization() {
+        return peepholeOptimization;
+    }
+
+    /**
+     * @return index of the class among classes of this loader with a static initializer,
+     * VMs keep the classes they have initialized in a bitset by this index
+     */
+    public synchronized int getInitializedClassIndex(Class<?> cls) {
+        Integer index = initializedClassIndices.get(cls);
+        if (index == null) {
+            index = initializedClasses.size();
+            initializedClasses.add(cls);
+            initializedClassIndices.put(cls, index);
+        }
+        return index;
+    }
+
+    public synchronized Class<?> getInitializedClass(int index) {
+        return initializedClasses.get(index);
+    }
+
     public void onVmDisabled() {
         vmDisabled = true;
     }
@@ -144,6 +275,7 @@ public class MemoryClassLoader extends SecureClassLoader {
 
     MemoryClassLoader addRemapping(String className, String toClassName) {
         remapping.put(className.replace(".", "/"), toClassName.replace(".", "/"));
+        remappingKey = null;
         return this;
     }
 
@@ -152,19 +284,21 @@ public class MemoryClassLoader extends SecureClassLoader {
             return super.loadClass(name, resolve);
         }
 
-        if (!classes.containsKey(name) && systemClassesCallback != null && systemClassesCallback.shouldResolve(name)) {
+        byte[] bytecode = getClassBytes(name);
+        if (bytecode == null && systemClassesCallback != null && systemClassesCallback.shouldResolve(name)) {
             // lazy resolving
             addSystemClass(name);
+            bytecode = classes.get(name);
         }
 
-        if (classes.containsKey(name)) {
+        if (bytecode != null) {
             synchronized (getClassLoadingLock(name)) {
                 // First, check if the class has already been loaded
                 Class c = findLoadedClass(name);
                 if (c == null) {
                     long t0 = System.nanoTime();
 
-                    if (classes.get(name).length == 0) {
+                    if (bytecode.length == 0) {
                         try {
                             c = fallbackClassLoader.loadClass(name);
                         } catch (ClassNotFoundException e) {
@@ -197,18 +331,23 @@ public class MemoryClassLoader extends SecureClassLoader {
 
     @Override
     protected Class<?> findClass(String name) throws ClassNotFoundException {
-        byte[] b = classes.get(name);
+        byte[] b = getClassBytes(name);
 
-        if (b.length == 0) {
+        if (b == null || b.length == 0) {
             return super.findClass(name);
         }
 
         if (!vmDisabled && !modifiedClasses.contains(name)) {
-            ClassReader cr = new ClassReader(b);
-            ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
-            Modifier mcw = new Modifier(cw, remapping);
-            cr.accept(mcw, 0);
-            b = cw.toByteArray();
+            if (remappingKey == null) {
+                remappingKey = TransformedClassCache.remappingKey(remapping);
+            }
+            String key = TransformedClassCache.key(b, remappingKey);
+            byte[] transformed = TransformedClassCache.get(key);
+            if (transformed == null) {
+                transformed = transform(b);
+                TransformedClassCache.put(key, transformed);
+            }
+            b = transformed;
             classes.put(name, b);
             modifiedClasses.add(name);
         }
@@ -221,15 +360,51 @@ public class MemoryClassLoader extends SecureClassLoader {
         return super.defineClass(name, b, 0, b.length);
     }
 
+    /**
+     * Methods not touched by remapping are copied as is, with their original frames and maxs.
+     */
+    byte[] transform(byte[] b) {
+        ClassReader cr = new ClassReader(b);
+        ClassWriter cw = new ClassWriter(cr, 0);
+        Map<String, String> classRemapping = referencesRemapped(cr) ? remapping : Collections.<String, String>emptyMap();
+        Modifier mcw = new Modifier(cw, classRemapping);
+        cr.accept(mcw, 0);
+        return cw.toByteArray();
+    }
+
+    private boolean referencesRemapped(ClassReader cr) {
+        if (remapping.isEmpty()) {
+            return false;
+        }
+        char[] buf = new char[cr.getMaxStringLength()];
+        for (int i = 1; i < cr.getItemCount(); i++) {
+            int offset = cr.getItem(i);
+            if (offset > 0 && cr.b[offset - 1] == 7 /* CONSTANT_Class */ && remapping.containsKey(cr.readUTF8(offset, buf))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public InputStream getBytecodeStream(Class cls) {
-        if (classes.containsKey(cls.getName()) && classes.get(cls.getName()).length != 0) {
-            return new ByteArrayInputStream(classes.get(cls.getName()));
+        byte[] b = getClassBytes(cls.getName());
+        if (b != null && b.length != 0) {
+            return new ByteArrayInputStream(b);
         } else {
             return null;
         }
     }
 
+    /**
+     * Defines a generated class, or returns the class defined earlier under the same name.
+     */
     public Class<?> defineClass(String name, byte[] b) {
-        return super.defineClass(name, b, 0, b.length);
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> c = findLoadedClass(name);
+            if (c != null) {
+                return c;
+            }
+            return super.defineClass(name, b, 0, b.length);
+        }
     }
 }
@@ -1,6 +1,8 @@
 package com.github.drxaos.jvmvm.loader;
 
 import com.github.drxaos.jvmvm.compiler.Compiler;
+import com.github.drxaos.jvmvm.compiler.JarRegistry;
+import com.github.drxaos.jvmvm.compiler.JarUtil;
 import com.github.drxaos.jvmvm.compiler.javac.JavaCompiler;
 import com.github.drxaos.jvmvm.vm.GlobalCodeLoader;
 import com.github.drxaos.jvmvm.vm.MethodCode;
@@ -9,11 +11,10 @@ import org.apache.commons.io.FileUtils;
 
 import java.io.*;
 import java.util.*;
-import java.util.jar.JarEntry;
-import java.util.jar.JarOutputStream;
-import java.util.jar.Manifest;
 
 public class Project implements Serializable {
+    private static final long serialVersionUID = -1407241207460069527L;
+
     String projectName;
     Map<String, String> files = new HashMap<String, String>();
     List<byte[]> jars = new ArrayList<byte[]>();
@@ -23,6 +24,9 @@ public class Project implements Serializable {
     Compiler compiler = new JavaCompiler();
     boolean started = false;
     boolean vmDisabled = false;
+    boolean virtualStatics = false;
+    boolean registerTranslation = false;
+    boolean peepholeOptimization = false;
     byte[] vmState;
 
     boolean shouldCompile = false;
@@ -30,13 +34,30 @@ public class Project implements Serializable {
 
     Map<String, Object> marks = new HashMap<String, Object>();
 
+    transient Map<String, byte[]> compiledClasses;
+    transient boolean sharedClassLoader;
+    transient ClassDependencies dependencies;
+    transient Set<String> changedFiles;
+
     transient MemoryClassLoader classLoader;
     transient VirtualMachine virtualMachine;
+    transient VirtualMachine.Snapshot snapshot;
 
     public static Project fromBytes(byte[] data) throws ProjectLoaderException {
         return fromInputStream(new ByteArrayInputStream(data));
     }
 
+    /**
+     * @param compile false to read the project without compiling it, it has to be compiled or linked afterwards
+     */
+    static Project fromBytes(byte[] data, boolean compile) throws ProjectLoaderException {
+        try {
+            return fromInputStream(new ProjectInputStream(new ByteArrayInputStream(data), compile));
+        } catch (IOException e) {
+            throw new ProjectLoaderException("cannot read project", e);
+        }
+    }
+
     public static Project fromInputStream(InputStream in) throws ProjectLoaderException {
         try {
             ObjectInputStream ois = new ObjectInputStream(in);
@@ -65,15 +86,32 @@ public class Project implements Serializable {
     }
 
     public Project addJar(byte[] contents) {
-        jars.add(contents);
+        jars.add(JarRegistry.intern(contents));
         return this;
     }
 
     public Project addFile(String fileName, String contents) {
         files.put(fileName, contents);
+        markChanged(fileName);
         return this;
     }
 
+    public Project removeFile(String fileName) {
+        if (files.remove(fileName) != null) {
+            markChanged(fileName);
+        }
+        return this;
+    }
+
+    private void markChanged(String fileName) {
+        if (compiled) {
+            if (changedFiles == null) {
+                changedFiles = new HashSet<String>();
+            }
+            changedFiles.add(fileName);
+        }
+    }
+
     public Project addFiles(Map<String, String> filenamesWithContents) {
         for (Map.Entry<String, String> e : filenamesWithContents.entrySet()) {
             addFile(e.getKey(), e.getValue());
@@ -89,9 +127,67 @@ public class Project implements Serializable {
         if (compiled) {
             throw new ProjectException("already compiled");
         }
-        Map<String, byte[]> classes = compiler.compile(files, systemClasses, jars);
+        link(compiler.compile(files, systemClasses, jars), Collections.<String>emptySet());
+        dependencies = null;
+        shouldCompile = true;
+        return this;
+    }
+
+    /**
+     * Compiles files changed since the last compilation together with the files depending on them.
+     * Bytecode and loader transformations of all other classes are reused.
+     * The virtual machine is dropped and has to be set up again.
+     */
+    public Project recompile() throws ProjectCompilerException {
+        if (!compiled || compiledClasses == null) {
+            compiled = false;
+            return compile();
+        }
+        if (changedFiles == null || changedFiles.isEmpty()) {
+            return this;
+        }
+        if (dependencies == null) {
+            dependencies = new ClassDependencies(compiledClasses, files.keySet(), getInputClasses());
+        }
+        Set<String> affectedFiles = dependencies.affectedFiles(changedFiles);
+        if (affectedFiles == null) {
+            link(compiler.compile(files, systemClasses, jars), Collections.<String>emptySet());
+            dependencies = null;
+        } else {
+            Set<String> staleClasses = dependencies.classesOf(affectedFiles);
+            Map<String, byte[]> classpath = new HashMap<String, byte[]>(compiledClasses);
+            classpath.keySet().removeAll(staleClasses);
+            Map<String, String> sources = new HashMap<String, String>();
+            for (String file : affectedFiles) {
+                if (files.containsKey(file)) {
+                    sources.put(file, files.get(file));
+                }
+            }
+            Map<String, byte[]> classes = new HashMap<String, byte[]>(classpath);
+            if (!sources.isEmpty()) {
+                classes.putAll(compiler.compile(sources, systemClasses, jars, classpath));
+            }
+            link(classes, classpath.keySet());
+            dependencies.remove(staleClasses);
+            dependencies.add(classes, files.keySet());
+        }
+        virtualMachine = null;
+        snapshot = null;
+        vmState = null;
+        started = false;
+        shouldCompile = true;
+        return this;
+    }
+
+    private void link(Map<String, byte[]> classes, Set<String> unchangedClasses) {
+        classes = new HashMap<String, byte[]>(classes);
+        for (byte[] jar : jars) {
+            // served from the shared jar index
+            classes.keySet().removeAll(JarRegistry.get(jar).getClasses().keySet());
+        }
+        MemoryClassLoader previousClassLoader = classLoader;
         ClassLoader fallbackClassLoader = this.getClass().getClassLoader();
-        classLoader = new MemoryClassLoader(fallbackClassLoader, classes, jars);
+        MemoryClassLoader classLoader = new MemoryClassLoader(fallbackClassLoader, new HashMap<String, byte[]>(classes), jars);
         for (String bootstrapClass : systemClasses) {
             try {
                 classLoader.addSystemClass(bootstrapClass);
@@ -103,9 +199,27 @@ public class Project implements Serializable {
         for (Map.Entry<String, String> remapClass : remapping.entrySet()) {
             classLoader.addRemapping(remapClass.getKey(), remapClass.getValue());
         }
+        if (vmDisabled) {
+            classLoader.onVmDisabled();
+        }
+        classLoader.registerTranslation = registerTranslation;
+        classLoader.peepholeOptimization = peepholeOptimization;
+        if (previousClassLoader != null && !unchangedClasses.isEmpty()) {
+            classLoader.reuseModifiedClasses(previousClassLoader, unchangedClasses);
+        }
+        this.classLoader = classLoader;
+        sharedClassLoader = false;
+        compiledClasses = classes;
+        changedFiles = null;
         compiled = true;
-        shouldCompile = true;
-        return this;
+    }
+
+    private Set<String> getInputClasses() {
+        Set<String> inputClasses = new HashSet<String>(systemClasses);
+        for (byte[] jar : jars) {
+            inputClasses.addAll(JarRegistry.get(jar).getClasses().keySet());
+        }
+        return inputClasses;
     }
 
     public byte[] compileJar() throws IOException {
@@ -116,23 +230,86 @@ public class Project implements Serializable {
         compiled = true;
         shouldCompile = false;
 
-        ByteArrayOutputStream b = new ByteArrayOutputStream();
-        JarOutputStream jar = new JarOutputStream(b, new Manifest());
-        for (Map.Entry<String, byte[]> e : classes.entrySet()) {
-            JarEntry jarAdd = new JarEntry(e.getKey().replace(".", "/") + ".class");
-            jarAdd.setTime(System.currentTimeMillis());
-            jar.putNextEntry(jarAdd);
-            jar.write(e.getValue());
-        }
-        jar.close();
+        return JarUtil.pack(classes);
+    }
 
-        return b.toByteArray();
+    /**
+     * Keeps static fields of project classes in the virtual machine instead of the loaded classes.
+     * Required for {@link #fork(String)}. Affects virtual machines set up afterwards.
+     */
+    public Project setVirtualStatics(boolean virtualStatics) {
+        this.virtualStatics = virtualStatics;
+        return this;
+    }
+
+    /**
+     * Fuses short int sequences into instructions operating directly on local variable slots.
+     * The option is fixed for the classes of a build, it affects classes linked afterwards.
+     */
+    public Project setRegisterTranslation(boolean registerTranslation) {
+        this.registerTranslation = registerTranslation;
+        return this;
+    }
+
+    /**
+     * Folds constants and simplifies short instruction sequences.
+     * The option is fixed for the classes of a build, it affects classes linked afterwards.
+     */
+    public Project setPeepholeOptimization(boolean peepholeOptimization) {
+        this.peepholeOptimization = peepholeOptimization;
+        return this;
+    }
+
+    /**
+     * @return true if other projects run on the class loader of this project
+     */
+    public boolean isClassLoaderShared() {
+        return sharedClassLoader;
     }
 
+    /**
+     * Creates a project sharing compiled classes and the class loader with this one.
+     * Both projects run their own virtual machines, which requires virtual statics.
+     */
+    public Project fork(String projectName) {
+        if (!compiled) {
+            throw new ProjectException("not compiled yet");
+        }
+        if (!virtualStatics) {
+            throw new ProjectException("static fields are not virtual");
+        }
+        Project fork = new Project(projectName);
+        fork.files.putAll(files);
+        fork.jars.addAll(jars);
+        fork.systemClasses.addAll(systemClasses);
+        fork.systemClassesCallback = systemClassesCallback;
+        fork.remapping.putAll(remapping);
+        fork.compiler = compiler;
+        fork.vmDisabled = vmDisabled;
+        fork.virtualStatics = true;
+        fork.registerTranslation = registerTranslation;
+        fork.peepholeOptimization = peepholeOptimization;
+        fork.compiledClasses = compiledClasses;
+        fork.classLoader = classLoader;
+        fork.sharedClassLoader = sharedClassLoader = true;
+        fork.compiled = true;
+        fork.shouldCompile = true;
+        return fork;
+    }
+
+    /**
+     * Disables the VM of this project, so that host code sees the static fields of the classes.
+     * Not available while the class loader is shared by {@link #fork(String)} or a batch restore.
+     */
     public MemoryClassLoader getClassLoader() {
         if (!compiled) {
             throw new ProjectException("not compiled yet");
         }
+        if (sharedClassLoader) {
+            throw new ProjectException("class loader is shared with other projects");
+        }
+        // host code sees the statics of a saved VM
+        getVirtualMachine();
         vmDisabled = true;
         classLoader.onVmDisabled();
         return classLoader;
@@ -166,12 +343,137 @@ public class Project implements Serializable {
 
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException, ProjectCompilerException {
         in.defaultReadObject();
-        if (shouldCompile) {
+        for (int i = 0; i < jars.size(); i++) {
+            jars.set(i, JarRegistry.intern(jars.get(i)));
+        }
+        boolean compile = !(in instanceof ProjectInputStream) || ((ProjectInputStream) in).compile;
+        if (shouldCompile && compile) {
             compile();
         }
     }
 
+    private static class ProjectInputStream extends ObjectInputStream {
+        final boolean compile;
+
+        ProjectInputStream(InputStream in, boolean compile) throws IOException {
+            super(in);
+            this.compile = compile;
+        }
+    }
+
+    /**
+     * @return true if the project was read without compiling and still has to be compiled or linked
+     */
+    boolean shouldLink() {
+        return shouldCompile && !compiled;
+    }
+
+    /**
+     * @return key equal for projects compiling to the same classes
+     */
+    Object getCodeKey() {
+        // jars are interned, so their identity stands for their content;
+        // every restored project has its own callback instance, callbacks of one class compile alike
+        return Arrays.asList(new TreeMap<String, String>(files), systemClasses, jars,
+                new TreeMap<String, String>(remapping), compiler.getClass(),
+                systemClassesCallback == null ? null : systemClassesCallback.getClass());
+    }
+
+    /**
+     * Links the classes already compiled by a project with the same code.
+     * The class loader is shared only if it resolves system classes by an equal callback.
+     */
+    void linkWith(Project project) {
+        if (virtualStatics && project.virtualStatics && vmDisabled == project.vmDisabled
+                && registerTranslation == project.registerTranslation
+                && peepholeOptimization == project.peepholeOptimization
+                && sameCallback(systemClassesCallback, project.systemClassesCallback)) {
+            compiledClasses = project.compiledClasses;
+            classLoader = project.classLoader;
+            sharedClassLoader = project.sharedClassLoader = true;
+            compiled = true;
+        } else {
+            link(project.compiledClasses, Collections.<String>emptySet());
+        }
+    }
+
+    /**
+     * @return true if the callbacks are equal or serialize to the same bytes, as lambdas capturing equal values do
+     */
+    private static boolean sameCallback(SystemClassesCallback a, SystemClassesCallback b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        if (a.equals(b)) {
+            return true;
+        }
+        if (a.getClass() != b.getClass()) {
+            return false;
+        }
+        try {
+            return Arrays.equals(serialize(a), serialize(b));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    void restoreVM() throws ProjectLoaderException {
+        getVirtualMachine();
+    }
+
+    /**
+     * @return the VM, a saved VM is deserialized on first use
+     */
+    private VirtualMachine getVirtualMachine() throws ProjectLoaderException {
+        if (vmState != null && virtualMachine == null) {
+            try {
+                virtualMachine = snapshot != null ? snapshot.restore() : VirtualMachine.create(classLoader, vmState);
+            } catch (Throwable throwable) {
+                throw new ProjectLoaderException("vm load error", throwable);
+            } finally {
+                snapshot = null;
+            }
+        }
+        return virtualMachine;
+    }
+
+    /**
+     * @return saved VM not deserialized yet, with its summary and marks read; null if there is none
+     */
+    private VirtualMachine.Snapshot getSnapshot() throws ProjectLoaderException {
+        if (vmState == null || virtualMachine != null) {
+            return null;
+        }
+        if (snapshot == null) {
+            try {
+                snapshot = VirtualMachine.open(classLoader, vmState);
+            } catch (Throwable throwable) {
+                throw new ProjectLoaderException("vm load error", throwable);
+            }
+        }
+        return snapshot.getSummary() != null ? snapshot : null;
+    }
+
+    /**
+     * @return true if the VM is deserialized; a restored VM is deserialized when something runs on it
+     */
+    public boolean isVmLoaded() {
+        return virtualMachine != null;
+    }
+
     public void saveToStream(ObjectOutputStream out) throws IOException {
+        if (snapshot != null) {
+            // marks handed out from the snapshot may have changed
+            getVirtualMachine();
+        }
         if (virtualMachine != null) {
             vmState = virtualMachine.serializeToBytes();
         }
@@ -203,12 +505,12 @@ public class Project implements Serializable {
             }
         }
         if (vmState != null && virtualMachine == null) {
-            try {
-                virtualMachine = VirtualMachine.create(classLoader, vmState);
-            } catch (Throwable throwable) {
-                throw new ProjectLoaderException("vm load error", throwable);
-            }
+            getVirtualMachine();
         } else if (virtualMachine != null) {
+            if (virtualMachine.isVirtualStatics() != virtualStatics) {
+                // static values already live in the VM or in the classes
+                throw new ProjectLoaderException("virtual statics changed after the vm was set up");
+            }
             try {
                 virtualMachine = VirtualMachine.restart(virtualMachine, className, methodName, self, paramTypes, paramValues);
             } catch (Throwable throwable) {
@@ -217,6 +519,7 @@ public class Project implements Serializable {
         } else {
             try {
                 virtualMachine = VirtualMachine.create(classLoader, className, methodName, self, paramTypes, paramValues);
+                virtualMachine.setVirtualStatics(virtualStatics);
             } catch (Throwable throwable) {
                 throw new ProjectLoaderException("vm start error", throwable);
             }
@@ -240,13 +543,7 @@ public class Project implements Serializable {
     }
 
     public Object run(long timeout) throws ProjectExecutionException, ProjectLoaderException, BreakpointException {
-        if (vmState != null && virtualMachine == null) {
-            try {
-                virtualMachine = VirtualMachine.create(classLoader, vmState);
-            } catch (Throwable throwable) {
-                throw new ProjectLoaderException("vm load error", throwable);
-            }
-        }
+        getVirtualMachine();
         try {
             return virtualMachine.run(timeout);
         } catch (BreakpointException e) {
@@ -261,13 +558,7 @@ public class Project implements Serializable {
     }
 
     public void step(boolean autoSerializationCheck) throws ProjectExecutionException, ProjectLoaderException {
-        if (vmState != null && virtualMachine == null) {
-            try {
-                virtualMachine = VirtualMachine.create(classLoader, vmState);
-            } catch (Throwable throwable) {
-                throw new ProjectLoaderException("vm load error", throwable);
-            }
-        }
+        getVirtualMachine();
         try {
             virtualMachine.step();
             if (autoSerializationCheck) {
@@ -278,26 +569,33 @@ public class Project implements Serializable {
         }
     }
 
+    /**
+     * A restored VM is not deserialized to answer this.
+     */
     public boolean isActive() throws ProjectLoaderException {
-        if (vmState != null && virtualMachine == null) {
-            try {
-                virtualMachine = VirtualMachine.create(classLoader, vmState);
-            } catch (Throwable throwable) {
-                throw new ProjectLoaderException("vm load error", throwable);
-            }
+        VirtualMachine.Snapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getSummary().isActive();
         }
-        return virtualMachine.isActive();
+        return getVirtualMachine().isActive();
     }
 
-    public Project markObject(String name, Serializable obj) {
-        if (vmState != null && virtualMachine == null) {
-            try {
-                virtualMachine = VirtualMachine.create(classLoader, vmState);
-            } catch (Throwable throwable) {
-                throw new ProjectLoaderException("vm load error", throwable);
-            }
+    /**
+     * @return state of the VM; a restored VM is not deserialized to answer this
+     */
+    public VirtualMachine.Summary getSummary() throws ProjectLoaderException {
+        VirtualMachine.Snapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getSummary();
         }
-        if (virtualMachine != null) {
+        return getVirtualMachine().getSummary();
+    }
+
+    public Project markObject(String name, Serializable obj) {
+        VirtualMachine.Snapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            snapshot.setMark(name, obj);
+        } else if (getVirtualMachine() != null) {
             virtualMachine.setMark(name, obj);
         } else {
             marks.put(name, obj);
@@ -306,14 +604,10 @@ public class Project implements Serializable {
     }
 
     public Object findMarkedObject(String name) {
-        if (vmState != null && virtualMachine == null) {
-            try {
-                virtualMachine = VirtualMachine.create(classLoader, vmState);
-            } catch (Throwable throwable) {
-                throw new ProjectLoaderException("vm load error", throwable);
-            }
-        }
-        if (virtualMachine != null) {
+        VirtualMachine.Snapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.getMark(name);
+        } else if (getVirtualMachine() != null) {
             return virtualMachine.getMark(name);
         } else {
             return marks.get(name);
@@ -321,7 +615,15 @@ public class Project implements Serializable {
     }
 
     public Object getResult() {
-        return virtualMachine.getResult();
+        return getVirtualMachine().getResult();
+    }
+
+    public long getTailCallCount() {
+        return getVirtualMachine().getTailCallCount();
+    }
+
+    public long getReusedFrameCount() {
+        return getVirtualMachine().getReusedFrameCount();
     }
 
     public Project remap(Map<String, String> remapping) {
@@ -352,27 +654,27 @@ public class Project implements Serializable {
     }
 
     public void setBreakpoint(String clazz, String method) {
-        virtualMachine.setBreakpoint(clazz, method);
+        getVirtualMachine().setBreakpoint(clazz, method);
     }
 
     public void setBreakpoint(String clazz, Integer line) {
-        virtualMachine.setBreakpoint(clazz, line);
+        getVirtualMachine().setBreakpoint(clazz, line);
     }
 
     public void removeBreakpoint(String clazz, String method) {
-        virtualMachine.removeBreakpoint(clazz, method);
+        getVirtualMachine().removeBreakpoint(clazz, method);
     }
 
     public void removeBreakpoint(String clazz, Integer line) {
-        virtualMachine.removeBreakpoint(clazz, line);
+        getVirtualMachine().removeBreakpoint(clazz, line);
     }
 
     public void removeBreakpoint(String clazz, String method, Integer line) {
-        virtualMachine.removeBreakpoint(clazz, method, line);
+        getVirtualMachine().removeBreakpoint(clazz, method, line);
     }
 
     public void clearBreakpoints() {
-        virtualMachine.clearBreakpoints();
+        getVirtualMachine().clearBreakpoints();
     }
 
 }
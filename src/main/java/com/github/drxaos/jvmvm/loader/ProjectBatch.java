@@ -0,0 +1,215 @@
+package com.github.drxaos.jvmvm.loader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Compiles many independent projects concurrently, or restores many saved projects at once.
+ * <p/>
+ * Compilers share their process-wide state (warm javac, system class inputs), so the batch
+ * only has to spread the projects over a bounded pool of workers.
+ */
+public class ProjectBatch {
+    final Set<Project> projects = new LinkedHashSet<Project>();
+    final int parallelism;
+
+    public ProjectBatch() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ProjectBatch(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+    }
+
+    public ProjectBatch add(Project project) {
+        projects.add(project);
+        return this;
+    }
+
+    public ProjectBatch addAll(Collection<Project> projects) {
+        for (Project project : projects) {
+            add(project);
+        }
+        return this;
+    }
+
+    public Set<Project> getProjects() {
+        return projects;
+    }
+
+    /**
+     * Compiles and links all projects of the batch.
+     *
+     * @return compilation errors of failed projects in the order they were added, empty if all projects compiled
+     */
+    public Map<Project, ProjectCompilerException> compile() {
+        Map<Project, ProjectCompilerException> failures = new LinkedHashMap<Project, ProjectCompilerException>();
+        if (projects.isEmpty()) {
+            return failures;
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, projects.size()));
+        try {
+            List<Future<ProjectCompilerException>> results = new ArrayList<Future<ProjectCompilerException>>();
+            for (final Project project : projects) {
+                results.add(pool.submit(() -> compile(project)));
+            }
+            int i = 0;
+            for (Project project : projects) {
+                ProjectCompilerException error;
+                try {
+                    error = results.get(i++).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ProjectException("batch compilation interrupted", e);
+                } catch (ExecutionException e) {
+                    error = new ProjectCompilerException("compilation failed", e.getCause());
+                }
+                if (error != null) {
+                    failures.put(project, error);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return failures;
+    }
+
+    /**
+     * Restores saved projects and adds them to the batch in the order of the snapshots.
+     * <p/>
+     * Projects with the same code (sources, jars, system classes, remapping and compiler) are compiled once,
+     * the others of the group link the same classes; projects with virtual statics also share the class loader.
+     * Saved virtual machines are then deserialized in parallel.
+     *
+     * @return restore errors by index of the snapshot, empty if all snapshots were restored
+     */
+    public Map<Integer, ProjectLoaderException> restore(List<byte[]> snapshots) {
+        Map<Integer, ProjectLoaderException> failures = new LinkedHashMap<Integer, ProjectLoaderException>();
+        if (snapshots.isEmpty()) {
+            return failures;
+        }
+        final Project[] restored = new Project[snapshots.size()];
+        ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, snapshots.size()));
+        try {
+            List<Integer> indices = new ArrayList<Integer>();
+            for (int i = 0; i < snapshots.size(); i++) {
+                indices.add(i);
+            }
+            fail(failures, indices, runAll(pool, indices, i -> restored[i] = read(snapshots.get(i))));
+
+            Map<Object, List<Integer>> groups = new LinkedHashMap<Object, List<Integer>>();
+            for (int i = 0; i < restored.length; i++) {
+                if (restored[i] != null && restored[i].shouldLink()) {
+                    Object key = restored[i].getCodeKey();
+                    List<Integer> group = groups.get(key);
+                    if (group == null) {
+                        group = new ArrayList<Integer>();
+                        groups.put(key, group);
+                    }
+                    group.add(i);
+                }
+            }
+            List<List<Integer>> linked = new ArrayList<List<Integer>>(groups.values());
+            List<RuntimeException> errors = runAll(pool, linked, group -> restored[group.get(0)].compile());
+            final Map<Integer, Project> members = new LinkedHashMap<Integer, Project>();
+            for (int i = 0; i < linked.size(); i++) {
+                List<Integer> group = linked.get(i);
+                for (int index : group) {
+                    fail(failures, index, errors.get(i));
+                }
+                if (errors.get(i) == null) {
+                    for (int index : group.subList(1, group.size())) {
+                        members.put(index, restored[group.get(0)]);
+                    }
+                }
+            }
+            // a member failing to link fails alone
+            List<Integer> linking = new ArrayList<Integer>(members.keySet());
+            fail(failures, linking, runAll(pool, linking, i -> restored[i].linkWith(members.get(i))));
+
+            List<Integer> loaded = new ArrayList<Integer>();
+            for (int i = 0; i < restored.length; i++) {
+                if (!failures.containsKey(i)) {
+                    loaded.add(i);
+                }
+            }
+            fail(failures, loaded, runAll(pool, loaded, i -> restored[i].restoreVM()));
+        } finally {
+            pool.shutdownNow();
+        }
+        for (int i = 0; i < restored.length; i++) {
+            if (!failures.containsKey(i)) {
+                add(restored[i]);
+            }
+        }
+        return failures;
+    }
+
+    private static Project read(byte[] snapshot) {
+        // not compiled yet, so that projects with the same code can be linked together
+        return Project.fromBytes(snapshot, false);
+    }
+
+    private static void fail(Map<Integer, ProjectLoaderException> failures, List<Integer> indices, List<RuntimeException> errors) {
+        for (int i = 0; i < indices.size(); i++) {
+            fail(failures, indices.get(i), errors.get(i));
+        }
+    }
+
+    private static void fail(Map<Integer, ProjectLoaderException> failures, int index, RuntimeException error) {
+        if (error == null || failures.containsKey(index)) {
+            return;
+        }
+        failures.put(index, error instanceof ProjectLoaderException
+                ? (ProjectLoaderException) error
+                : new ProjectLoaderException("cannot restore project", error));
+    }
+
+    /**
+     * @return errors of the tasks in the order of the items, null for tasks that succeeded
+     */
+    private static <T> List<RuntimeException> runAll(ForkJoinPool pool, List<T> items, final Consumer<T> task) {
+        List<Future<?>> results = new ArrayList<Future<?>>();
+        for (final T item : items) {
+            results.add(pool.submit(() -> task.accept(item)));
+        }
+        List<RuntimeException> errors = new ArrayList<RuntimeException>();
+        for (Future<?> result : results) {
+            try {
+                result.get();
+                errors.add(null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProjectException("batch restore interrupted", e);
+            } catch (ExecutionException e) {
+                errors.add(e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause()
+                        : new ProjectLoaderException("cannot restore project", e.getCause()));
+            }
+        }
+        return errors;
+    }
+
+    private static ProjectCompilerException compile(Project project) {
+        try {
+            project.compile();
+            return null;
+        } catch (ProjectCompilerException e) {
+            return e;
+        } catch (RuntimeException e) {
+            return new ProjectCompilerException("compilation failed", e);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.drxaos.jvmvm.loader;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Process-wide cache of class bytes transformed by {@link MemoryClassLoader}.
+ * Keyed by the hash of the original bytes and of the remapping table, so loaders of different projects
+ * using the same classes define them without running ASM again.
+ */
+class TransformedClassCache {
+    static final long MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final LinkedHashMap<String, byte[]> cache = new LinkedHashMap<String, byte[]>(256, 0.75f, true);
+    private static long size = 0;
+
+    private TransformedClassCache() {
+    }
+
+    static String remappingKey(Map<String, String> remapping) {
+        if (remapping.isEmpty()) {
+            return "";
+        }
+        return DigestUtils.shaHex(new TreeMap<String, String>(remapping).toString());
+    }
+
+    static String key(byte[] original, String remappingKey) {
+        return DigestUtils.shaHex(original) + remappingKey;
+    }
+
+    static synchronized byte[] get(String key) {
+        return cache.get(key);
+    }
+
+    static synchronized void put(String key, byte[] transformed) {
+        if (transformed.length > MAX_BYTES) {
+            return;
+        }
+        byte[] old = cache.put(key, transformed);
+        if (old != null) {
+            size -= old.length;
+        }
+        size += transformed.length;
+        while (size > MAX_BYTES) {
+            Map.Entry<String, byte[]> eldest = cache.entrySet().iterator().next();
+            size -= eldest.getValue().length;
+            cache.remove(eldest.getKey());
+        }
+    }
+}
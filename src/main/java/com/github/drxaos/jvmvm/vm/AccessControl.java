@@ -29,6 +29,7 @@
 package com.github.drxaos.jvmvm.vm;
 
 import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
 import java.lang.reflect.Member;
 
 import static java.lang.reflect.Modifier.*;
@@ -72,6 +73,21 @@ public class AccessControl {
         throw new IllegalAccessError(Types.getInternalName(member));
     }
 
+    /**
+     * Clears the final modifier of the field object, so that constructors and restored statics can set it.
+     */
+    public static void makeWritable(Field field) {
+        try {
+            Field modifiersField = Field.class.getDeclaredField("modifiers");
+            modifiersField.setAccessible(true);
+            modifiersField.setInt(field, field.getModifiers() & ~FINAL);
+        } catch (NoSuchFieldException e) {
+            throw (InternalError) new InternalError().initCause(e);
+        } catch (IllegalAccessException e) {
+            throw (InternalError) new InternalError().initCause(e);
+        }
+    }
+
     public static void makeAccessible(AccessibleObject accessible) {
         try {
             accessible.setAccessible(true);
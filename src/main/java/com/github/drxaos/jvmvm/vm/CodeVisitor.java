@@ -28,9 +28,11 @@
 
 package com.github.drxaos.jvmvm.vm;
 
+import com.github.drxaos.jvmvm.loader.MemoryClassLoader;
 import com.github.drxaos.jvmvm.vm.insn.*;
-import com.github.drxaos.jvmvm.vm.ref.ClassRef;
+import com.github.drxaos.jvmvm.vm.ref.ConstantPool;
 import org.objectweb.asm.*;
+import org.objectweb.asm.tree.MethodNode;
 
 import java.util.*;
 
@@ -54,6 +56,15 @@ public final class CodeVisitor extends ClassVisitor {
                 }
             }
             for (ExcptHandler excpt : excpts) excpt.resolve(labels);
+            TypeAnalysis.specialize(owner, node, insns);
+            HostNew.fuse(insns, labels.values());
+            if (peepholeOptimization) {
+                List<Integer> lineStarts = new ArrayList<Integer>();
+                for (LineNumber line : lines) lineStarts.add(line.start);
+                Peephole.optimize(insns, labels.values(), lineStarts);
+            }
+            if (registerTranslation) RegisterInsn.translate(insns, labels.values());
+            MethodInsn.markTailCalls(insns, excpts);
             MethodCode methodCode = new MethodCode(access, insns, excpts, lines, maxStack + maxLocals, source);
             code.put((name + desc).intern(), methodCode);
         }
@@ -121,7 +132,7 @@ public final class CodeVisitor extends ClassVisitor {
 
         public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
             if (!interpretable) return;
-            excpts.add(new ExcptHandler(start, end, handler, type == null ? null : new ClassRef(type, cls)));
+            excpts.add(new ExcptHandler(start, end, handler, type == null ? null : ConstantPool.of(cls).getClassRef(type)));
         }
 
         public void visitLineNumber(int line, Label start) {
@@ -146,9 +157,13 @@ public final class CodeVisitor extends ClassVisitor {
 
     private final Class<?> cls;
     private final Map<String, MethodCode> code;
+    private final String methodId;
+    private final boolean registerTranslation;
+    private final boolean peepholeOptimization;
 
     private String source;
     private int version;
+    private String owner;
 
     private boolean interpretable;
     private String name;
@@ -159,17 +174,30 @@ public final class CodeVisitor extends ClassVisitor {
     private List<ExcptHandler> excpts;
     private SortedSet<LineNumber> lines;
     private Map<Label, Integer> labels;
+    private MethodNode node;
 
 
     public CodeVisitor(Class<?> cls, Map<String, MethodCode> code) {
+        this(cls, code, null);
+    }
+
+    /**
+     * @param methodId if not null, only code of this method is decoded
+     */
+    public CodeVisitor(Class<?> cls, Map<String, MethodCode> code, String methodId) {
         super(Opcodes.ASM4, null);
         this.cls = cls;
         this.code = code;
+        this.methodId = methodId;
+        ClassLoader loader = cls.getClassLoader();
+        this.registerTranslation = loader instanceof MemoryClassLoader && ((MemoryClassLoader) loader).isRegisterTranslation();
+        this.peepholeOptimization = loader instanceof MemoryClassLoader && ((MemoryClassLoader) loader).isPeepholeOptimization();
     }
 
 
     public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
         this.version = version;
+        this.owner = name;
     }
 
     public void visitSource(String source, String debug) {
@@ -182,11 +210,19 @@ public final class CodeVisitor extends ClassVisitor {
 
     public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
         if (version < 49 /*|| "<init>".equals(name) || "<cinit>".equals(name)*/) return null;
+        if (methodId != null && !(methodId.length() == name.length() + desc.length()
+                && methodId.startsWith(name) && methodId.endsWith(desc))) return null;
         this.interpretable = true;
         this.name = name;
         this.desc = desc;
         this.access = access;
-        return methodVisitor;
+        // buffer the method so that its code can be analyzed before the MethodCode is built
+        return node = new MethodNode(Opcodes.ASM5, access, name, desc, signature, exceptions) {
+            @Override
+            public void visitEnd() {
+                accept(methodVisitor);
+            }
+        };
     }
 
     public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
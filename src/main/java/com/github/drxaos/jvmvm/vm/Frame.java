@@ -55,6 +55,7 @@ public final class Frame implements Cloneable, Serializable {
     private transient Constructor constructor;
     private transient MethodCode code;
     private boolean mutable;
+    transient FramePool pool;
 
     public static final Object LAMBDA_STACK_SKIP = new Object();
 
@@ -112,7 +113,7 @@ public final class Frame implements Cloneable, Serializable {
     public Frame newCallFrame(int ret, Method method, MethodCode code) {
         assert mutable;
 
-        Frame frame = new Frame(this, ret, method, code);
+        Frame frame = newFrame(this, ret, method, null, code);
 
         boolean isSynchronized = Modifier.isSynchronized(method.getModifiers());
         boolean isStatic = Modifier.isStatic(method.getModifiers());
@@ -148,7 +149,7 @@ public final class Frame implements Cloneable, Serializable {
     public Frame newCallFrame(int ret, Constructor method, MethodCode code) {
         assert mutable;
 
-        Frame frame = new Frame(this, ret, method, code);
+        Frame frame = newFrame(this, ret, null, method, code);
 
         boolean isSynchronized = Modifier.isSynchronized(method.getModifiers());
         boolean isStatic = Modifier.isStatic(method.getModifiers());
@@ -180,7 +181,7 @@ public final class Frame implements Cloneable, Serializable {
     public Frame newTailCallFrame(Method method, MethodCode code) {
         assert mutable;
 
-        Frame frame = new Frame(parent, ret, method, code);
+        Frame frame = newFrame(parent, ret, method, null, code);
 
         boolean isSynchronized = Modifier.isSynchronized(method.getModifiers());
         boolean isStatic = Modifier.isStatic(method.getModifiers());
@@ -207,9 +208,38 @@ public final class Frame implements Cloneable, Serializable {
         }
         if (isSynchronized) Monitor.enter(target);
 
+        release();
         return frame;
     }
 
+    private Frame newFrame(Frame parent, int ret, Method method, Constructor constructor, MethodCode code) {
+        Frame frame = pool != null ? pool.poll(code.stackSize) : null;
+        if (frame == null) {
+            return method != null ? new Frame(parent, ret, method, code) : new Frame(parent, ret, constructor, code);
+        }
+        frame.parent = parent;
+        frame.ret = ret;
+        frame.method = method;
+        frame.constructor = constructor;
+        frame.code = code;
+        frame.sp = code.stackSize;
+        frame.mutable = true;
+        return frame;
+    }
+
+    /**
+     * Returns a frame that is no longer on the VM stack to the pool. Immutable frames may still be shared and are kept.
+     */
+    public void release() {
+        if (!mutable || pool == null) return;
+        Arrays.fill(stack, null);
+        parent = null;
+        method = null;
+        constructor = null;
+        code = null;
+        pool.offer(this, stack.length);
+    }
+
 
     public int getInt(int var) {
         return (Integer) stack[var];
@@ -395,6 +425,14 @@ public final class Frame implements Cloneable, Serializable {
         return sp + i;
     }
 
+    /**
+     * Same as {@link #getTarget}, but null when nothing is on the operand stack below the parameters.
+     */
+    public Object peekTarget(Class<?>... types) {
+        int i = getTargetIdx(types);
+        return i < stack.length ? stack[i] : null;
+    }
+
     public Object[] popParameters(Class<?>... types) {
         assert mutable;
 
@@ -502,6 +540,7 @@ public final class Frame implements Cloneable, Serializable {
 
 
     public void makeParentImmutable() {
+        if (pool != null) pool.disable();
         for (Frame frame = parent; frame != null && frame.mutable; frame = frame.parent) frame.mutable = false;
     }
 
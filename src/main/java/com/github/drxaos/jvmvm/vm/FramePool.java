@@ -0,0 +1,47 @@
+package com.github.drxaos.jvmvm.vm;
+
+/**
+ * Per-VM pool of dead frames, bucketed by stack size, so calls reuse frames and their stack arrays.
+ * <p/>
+ * Only frames that were never made immutable are released into it. Once frames are shared
+ * (see {@link Frame#makeParentImmutable()}) the pool is switched off for the rest of the run.
+ */
+final class FramePool {
+    private static final int MAX_STACK_SIZE = 64;
+    private static final int MAX_FRAMES = 32;
+
+    private final Frame[][] frames = new Frame[MAX_STACK_SIZE + 1][];
+    private final int[] counts = new int[MAX_STACK_SIZE + 1];
+    private boolean disabled;
+    long reused;
+
+    Frame poll(int stackSize) {
+        if (stackSize > MAX_STACK_SIZE || counts[stackSize] == 0) {
+            return null;
+        }
+        Frame[] bucket = frames[stackSize];
+        Frame frame = bucket[--counts[stackSize]];
+        bucket[counts[stackSize]] = null;
+        reused++;
+        return frame;
+    }
+
+    void offer(Frame frame, int stackSize) {
+        if (disabled || stackSize > MAX_STACK_SIZE || counts[stackSize] == MAX_FRAMES) {
+            return;
+        }
+        Frame[] bucket = frames[stackSize];
+        if (bucket == null) {
+            bucket = frames[stackSize] = new Frame[MAX_FRAMES];
+        }
+        bucket[counts[stackSize]++] = frame;
+    }
+
+    void disable() {
+        disabled = true;
+        for (int i = 0; i <= MAX_STACK_SIZE; i++) {
+            frames[i] = null;
+            counts[i] = 0;
+        }
+    }
+}
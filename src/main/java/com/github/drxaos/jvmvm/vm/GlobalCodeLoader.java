@@ -29,18 +29,29 @@
 package com.github.drxaos.jvmvm.vm;
 
 import com.github.drxaos.jvmvm.loader.MemoryClassLoader;
-import org.objectweb.asm.ClassReader;
+import org.apache.commons.io.IOUtils;
 
 import java.io.InputStream;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Code of interpretable methods.
+ * <p/>
+ * Each class gets a {@link MethodTable} layered over the table of its superclass, built from the class bytes
+ * when the class is first seen. Method bodies are decoded on the first lookup of each method.
+ */
 public final class GlobalCodeLoader {
 
-    public static synchronized MethodCode get(Class<?> cls, String methodId) {
-        Map<String, MethodCode> code = loadCode(cls);
-        MethodCode methodCode = code.get(methodId);
+    private static final ClassValue<MethodTable> tables = new ClassValue<MethodTable>() {
+        @Override
+        protected MethodTable computeValue(Class<?> cls) {
+            Class<?> superclass = cls.getSuperclass();
+            return MethodTable.create(cls, readCode(cls), superclass == null ? null : get(superclass));
+        }
+    };
+
+    public static MethodCode get(Class<?> cls, String methodId) {
+        MethodCode methodCode = tables.get(cls).find(methodId);
         // TODO check if code of method from user classes not found
 //        if (cls.getClassLoader() instanceof MemoryClassLoader && methodCode == null) {
 //            throw new ProjectLoaderException("cannot load code for " + cls.getName() + " " + methodId);
@@ -48,30 +59,29 @@ public final class GlobalCodeLoader {
         return methodCode;
     }
 
-    public static synchronized Map<String, MethodCode> getAll(Class<?> cls) {
-        return loadCode(cls);
-    }
-
-    private static Map<String, MethodCode> loadCode(Class<?> cls) {
-        if (cls == null) return Collections.emptyMap();
-        assert Thread.holdsLock(GlobalCodeLoader.class);
-        Map<String, MethodCode> code = loadCode(cls.getSuperclass());
-        code = new HashMap<String, MethodCode>(code);
-        readCode(cls, code);
-        return code;
+    /**
+     * @return read-only view of the code of all methods of the class and its superclasses
+     */
+    public static Map<String, MethodCode> getAll(Class<?> cls) {
+        return tables.get(cls).asMap();
     }
 
-    private static void readCode(Class<?> cls, Map<String, MethodCode> code) {
+    private static byte[] readCode(Class<?> cls) {
         try {
             InputStream stream = null;
             if (cls.getClassLoader() instanceof MemoryClassLoader) {
                 stream = ((MemoryClassLoader) cls.getClassLoader()).getBytecodeStream(cls);
             }
             if (stream != null) {
-                new ClassReader(stream).accept(new CodeVisitor(cls, code), 0);
+                try {
+                    return IOUtils.toByteArray(stream);
+                } finally {
+                    IOUtils.closeQuietly(stream);
+                }
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
+        return null;
     }
-}
\ No newline at end of file
+}
@@ -1,9 +1,66 @@
 package com.github.drxaos.jvmvm.vm;
 
+import com.github.drxaos.jvmvm.loader.MemoryClassLoader;
+
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
 public class InvokeStaticInitializer {
+    private static final ClassValue<Method> initializers = new ClassValue<Method>() {
+        @Override
+        protected Method computeValue(Class<?> cls) {
+            for (Method method : cls.getDeclaredMethods()) {
+                if ("void".equals(method.getName()) && method.getParameterTypes().length == 0) {
+                    return method;
+                }
+            }
+            return null;
+        }
+    };
+
+    private static final ClassValue<Target> targets = new ClassValue<Target>() {
+        @Override
+        protected Target computeValue(Class<?> cls) {
+            if (initializers.get(cls) == null || !(cls.getClassLoader() instanceof MemoryClassLoader)) {
+                return Target.NONE;
+            }
+            MemoryClassLoader loader = (MemoryClassLoader) cls.getClassLoader();
+            return new Target(cls, loader, loader.getInitializedClassIndex(cls));
+        }
+    };
+
+    /**
+     * Class with a static initializer and its index among such classes of its loader.
+     */
+    public static final class Target {
+        static final Target NONE = new Target(null, null, -1);
+
+        final Class<?> cls;
+        final MemoryClassLoader loader;
+        final int index;
+
+        private Target(Class<?> cls, MemoryClassLoader loader, int index) {
+            this.cls = cls;
+            this.loader = loader;
+            this.index = index;
+        }
+
+        /**
+         * @return this target, or null if the class has no static initializer
+         */
+        public Target orNull() {
+            return this == NONE ? null : this;
+        }
+    }
+
+    /**
+     * @return target of the class, {@link Target#NONE} if it has no static initializer and instructions
+     * using it never need to check
+     */
+    public static Target targetOf(Class<?> cls) {
+        return targets.get(cls);
+    }
+
     public static boolean shouldClinit(VirtualMachine vm, Class cls) {
         return !vm.isClinited(cls);
     }
@@ -12,9 +69,9 @@ public class InvokeStaticInitializer {
         if (vm.isClinited(cls)) {
             return;
         }
+        Method method = initializers.get(cls);
         try {
             Frame frame = vm.getFrame();
-            Method method = cls.getDeclaredMethod("void", new Class[0]);
             method.setAccessible(true); // TODO check access
 
             MethodCode code = GlobalCodeLoader.get(cls, "void()V");
@@ -46,8 +103,6 @@ public class InvokeStaticInitializer {
                     throw new StackTracedException(e.getCause());
                 }
             }
-        } catch (NoSuchMethodException e) {
-            // don't invoke
         } catch (StackTracedException e) {
             throw new RuntimeException(e);
         } catch (Throwable throwable) {
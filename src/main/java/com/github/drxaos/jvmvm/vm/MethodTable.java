@@ -0,0 +1,165 @@
+package com.github.drxaos.jvmvm.vm;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Interpretable methods declared by one class, layered over the table of its nearest superclass that has any.
+ * <p/>
+ * Method ids are interned and sorted, code is kept in a parallel array and decoded on the first lookup,
+ * so a class costs two arrays no matter how deep its hierarchy is. Each table decodes under its own lock.
+ */
+final class MethodTable {
+    static final MethodTable EMPTY = new MethodTable(null, null, new String[0], null);
+
+    private final Class<?> cls;
+    private final MethodTable parent;
+    private final String[] ids;
+    private final MethodCode[] codes;
+    // slots decoded already, including methods without code
+    private final BitSet decoded;
+    private byte[] bytecode;
+    private int undecoded;
+
+    private MethodTable(Class<?> cls, MethodTable parent, String[] ids, byte[] bytecode) {
+        this.cls = cls;
+        this.parent = parent;
+        this.ids = ids;
+        this.codes = new MethodCode[ids.length];
+        this.decoded = new BitSet(ids.length);
+        this.bytecode = bytecode;
+        this.undecoded = ids.length;
+    }
+
+    /**
+     * @return table of the class, or the parent itself if the class declares no interpretable methods
+     */
+    static MethodTable create(Class<?> cls, byte[] bytecode, MethodTable parent) {
+        if (parent == null) {
+            parent = EMPTY;
+        }
+        if (bytecode == null) {
+            return parent;
+        }
+        final Set<String> methods = new HashSet<String>();
+        new ClassReader(bytecode).accept(new ClassVisitor(Opcodes.ASM5) {
+            private boolean interpretable;
+
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                interpretable = version >= 49;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+                if (interpretable && (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) == 0) {
+                    methods.add((name + desc).intern());
+                }
+                return null;
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        if (methods.isEmpty()) {
+            return parent;
+        }
+        String[] ids = methods.toArray(new String[methods.size()]);
+        Arrays.sort(ids);
+        return new MethodTable(cls, parent == EMPTY ? null : parent, ids, bytecode);
+    }
+
+    MethodCode find(String methodId) {
+        for (MethodTable t = this; t != null; t = t.parent) {
+            int i = Arrays.binarySearch(t.ids, methodId);
+            if (i >= 0) {
+                return t.decode(i);
+            }
+        }
+        return null;
+    }
+
+    private synchronized MethodCode decode(int i) {
+        if (!decoded.get(i)) {
+            Map<String, MethodCode> code = new HashMap<String, MethodCode>(2);
+            new ClassReader(bytecode).accept(new CodeVisitor(cls, code, ids[i]), ClassReader.SKIP_FRAMES);
+            codes[i] = code.get(ids[i]);
+            decoded.set(i);
+            if (--undecoded == 0) {
+                bytecode = null;
+            }
+        }
+        return codes[i];
+    }
+
+    private synchronized void decodeAll(Set<String> seen, List<Map.Entry<String, MethodCode>> entries) {
+        if (bytecode != null) {
+            Map<String, MethodCode> code = new HashMap<String, MethodCode>();
+            new ClassReader(bytecode).accept(new CodeVisitor(cls, code), ClassReader.SKIP_FRAMES);
+            for (int i = decoded.nextClearBit(0); i < ids.length; i = decoded.nextClearBit(i + 1)) {
+                codes[i] = code.get(ids[i]);
+            }
+            decoded.set(0, ids.length);
+            bytecode = null;
+            undecoded = 0;
+        }
+        for (int i = 0; i < ids.length; i++) {
+            if (codes[i] != null && seen.add(ids[i])) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<String, MethodCode>(ids[i], codes[i]));
+            }
+        }
+    }
+
+    /**
+     * @return read-only view of all methods visible in this table, own methods shadowing inherited ones
+     */
+    Map<String, MethodCode> asMap() {
+        return new AbstractMap<String, MethodCode>() {
+            @Override
+            public MethodCode get(Object key) {
+                if (!(key instanceof String)) {
+                    return null;
+                }
+                return find((String) key);
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return get(key) != null;
+            }
+
+            @Override
+            public Set<Entry<String, MethodCode>> entrySet() {
+                List<Entry<String, MethodCode>> entries = new ArrayList<Entry<String, MethodCode>>();
+                Set<String> seen = new HashSet<String>();
+                for (MethodTable t = MethodTable.this; t != null; t = t.parent) {
+                    t.decodeAll(seen, entries);
+                }
+                final List<Entry<String, MethodCode>> list = Collections.unmodifiableList(entries);
+                return new AbstractSet<Entry<String, MethodCode>>() {
+                    @Override
+                    public Iterator<Entry<String, MethodCode>> iterator() {
+                        return list.iterator();
+                    }
+
+                    @Override
+                    public int size() {
+                        return list.size();
+                    }
+                };
+            }
+        };
+    }
+}
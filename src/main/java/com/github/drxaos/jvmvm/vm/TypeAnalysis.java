@@ -0,0 +1,87 @@
+package com.github.drxaos.jvmvm.vm;
+
+import com.github.drxaos.jvmvm.vm.insn.ArrayInsn;
+import com.github.drxaos.jvmvm.vm.insn.Insn;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicInterpreter;
+import org.objectweb.asm.tree.analysis.BasicValue;
+
+import java.util.List;
+
+/**
+ * Data-flow analysis of method code, used to choose typed instruction variants when the code is loaded.
+ * <p/>
+ * Only methods with instructions whose variant depends on operand types are analyzed.
+ * If the analysis fails, the generic instructions are kept.
+ */
+final class TypeAnalysis {
+
+    private TypeAnalysis() {
+    }
+
+    static void specialize(String owner, MethodNode method, List<Insn> insns) {
+        if (!hasTypedInsns(method)) {
+            return;
+        }
+        org.objectweb.asm.tree.analysis.Frame[] frames;
+        try {
+            frames = new Analyzer(new ArrayInterpreter()).analyze(owner, method);
+        } catch (AnalyzerException e) {
+            return;
+        }
+        int i = 0;
+        for (AbstractInsnNode node = method.instructions.getFirst(); node != null; node = node.getNext()) {
+            int opcode = node.getOpcode();
+            if (opcode < 0) {
+                continue;
+            }
+            org.objectweb.asm.tree.analysis.Frame frame = frames[method.instructions.indexOf(node)];
+            if (frame != null && (opcode == Opcodes.BALOAD || opcode == Opcodes.BASTORE)) {
+                int depth = opcode == Opcodes.BALOAD ? 2 : 3;
+                Type type = ((BasicValue) frame.getStack(frame.getStackSize() - depth)).getType();
+                insns.set(i, ArrayInsn.getInsn(opcode, type == null ? null : type.getDescriptor()));
+            }
+            i++;
+        }
+    }
+
+    private static boolean hasTypedInsns(MethodNode method) {
+        for (AbstractInsnNode node = method.instructions.getFirst(); node != null; node = node.getNext()) {
+            if (node.getOpcode() == Opcodes.BALOAD || node.getOpcode() == Opcodes.BASTORE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Basic values that keep byte and boolean array types apart.
+     */
+    private static final class ArrayInterpreter extends BasicInterpreter {
+        ArrayInterpreter() {
+            super(Opcodes.ASM5);
+        }
+
+        @Override
+        public BasicValue newValue(Type type) {
+            if (type != null && type.getSort() == Type.ARRAY && type.getDimensions() == 1
+                    && (type.getElementType() == Type.BYTE_TYPE || type.getElementType() == Type.BOOLEAN_TYPE)) {
+                return new BasicValue(type);
+            }
+            return super.newValue(type);
+        }
+
+        @Override
+        public BasicValue merge(BasicValue v, BasicValue w) {
+            if (!v.equals(w) && v.isReference() && w.isReference()) {
+                return BasicValue.REFERENCE_VALUE;
+            }
+            return super.merge(v, w);
+        }
+    }
+}
@@ -51,7 +51,10 @@ import java.util.*;
 import java.util.concurrent.TimeoutException;
 
 public final class VirtualMachine implements Serializable {
+    private static final long serialVersionUID = 4174038416228032516L;
+
     private long stepNumber = 0;
+    private long tailCalls = 0;
     private int cp;
     private Frame frame;
     private Insn[] insns;
@@ -60,7 +63,13 @@ public final class VirtualMachine implements Serializable {
     private Object result;
 
     private Map<FieldRef, Object> staticValues = new LinkedHashMap<FieldRef, Object>();
-    private Set<Class> clinitedClasses = new HashSet<Class>();
+    private boolean virtualStatics = false;
+    private transient Map<MemoryClassLoader, BitSet> clinited = new HashMap<MemoryClassLoader, BitSet>();
+    // serialized form of the initialized classes, only set while the VM is written or read
+    private Set<Class> clinitedClasses;
+    private transient MemoryClassLoader clinitedLoader;
+    private transient BitSet clinitedBits;
+    private transient FramePool framePool;
     Map<String, Object> marks = new HashMap<String, Object>();
 
     InterfaceImplementer interfaceImplementer = new InterfaceImplementer();
@@ -118,21 +127,15 @@ public final class VirtualMachine implements Serializable {
     }
 
     public static VirtualMachine create(ClassLoader cl, InputStream in) throws Throwable {
-        CustomClassLoaderObjectInputStream ois = new CustomClassLoaderObjectInputStream(in, cl);
-        Object o = ois.readObject();
-        if (o instanceof VirtualMachine) {
-            VirtualMachine vm = (VirtualMachine) o;
-            vm.classLoader = cl;
-            vm.restoreStatics();
-            return vm;
-        } else {
-            throw new IOException("object class is [" + o.getClass().getName() + "]");
-        }
+        return open(cl, in).restore();
     }
 
     private void restoreStatics() throws ProjectLoaderException {
         for (Map.Entry<FieldRef, Object> e : staticValues.entrySet()) {
             Field f = e.getKey().get();
+            if (isVirtualStatic(f)) {
+                continue;
+            }
 
             try {
                 // enable access
@@ -153,6 +156,100 @@ public final class VirtualMachine implements Serializable {
         return create(cl, new ByteArrayInputStream(serialized));
     }
 
+    /**
+     * Reads only the summary at the start of a saved VM, without deserializing frames, statics or objects.
+     */
+    public static Snapshot open(ClassLoader cl, byte[] serialized) throws Throwable {
+        return open(cl, new ByteArrayInputStream(serialized));
+    }
+
+    static Snapshot open(ClassLoader cl, InputStream in) throws Throwable {
+        CustomClassLoaderObjectInputStream ois = new CustomClassLoaderObjectInputStream(in, cl);
+        return new Snapshot(cl, ois, ois.readObject());
+    }
+
+    /**
+     * Saved VM with its summary read; the VM itself is deserialized from the rest of the stream by {@link #restore()}.
+     * Marks are read with the summary and are the same objects the restored VM sees.
+     */
+    public static final class Snapshot {
+        private final ClassLoader cl;
+        private final ObjectInputStream in;
+        private final Summary summary;
+        private Object next;
+
+        Snapshot(ClassLoader cl, ObjectInputStream in, Object first) {
+            this.cl = cl;
+            this.in = in;
+            if (first instanceof Summary) {
+                summary = (Summary) first;
+            } else {
+                summary = null;
+                next = first;
+            }
+        }
+
+        /**
+         * @return summary or null if the VM was saved without one
+         */
+        public Summary getSummary() {
+            return summary;
+        }
+
+        public Object getMark(String name) {
+            return summary.marks.get(name);
+        }
+
+        public void setMark(String name, Object object) {
+            summary.marks.put(name, object);
+        }
+
+        public VirtualMachine restore() throws Throwable {
+            Object o = next != null ? next : in.readObject();
+            next = null;
+            if (o instanceof VirtualMachine) {
+                VirtualMachine vm = (VirtualMachine) o;
+                vm.classLoader = cl;
+                vm.restoreStatics();
+                return vm;
+            } else {
+                throw new IOException("object class is [" + o.getClass().getName() + "]");
+            }
+        }
+    }
+
+    /**
+     * State of a saved VM that can be queried before the VM itself is restored.
+     */
+    public static final class Summary implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean active;
+        private final long stepNumber;
+        private final StackTraceElement pointer;
+        // the map of the VM, written before it, so it is restored with the summary
+        private final Map<String, Object> marks;
+
+        Summary(boolean active, long stepNumber, StackTraceElement pointer, Map<String, Object> marks) {
+            this.active = active;
+            this.stepNumber = stepNumber;
+            this.pointer = pointer;
+            this.marks = marks;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public long getStepNumber() {
+            return stepNumber;
+        }
+
+        public StackTraceElement getPointer() {
+            return pointer;
+        }
+    }
+
     VirtualMachine(StackTraceElement[] trace, Method method, MethodCode code, Object... params) {
         this.setFrame(Frame.newBootstrapFrame(method, code, params));
         this.trace = trace;
@@ -185,6 +282,24 @@ public final class VirtualMachine implements Serializable {
         return stepNumber;
     }
 
+    /**
+     * @return number of calls that replaced the frame of their caller instead of pushing a new one
+     */
+    public long getTailCallCount() {
+        return tailCalls;
+    }
+
+    public void onTailCall() {
+        tailCalls++;
+    }
+
+    /**
+     * @return number of call frames taken from the frame pool since the VM was created or restored
+     */
+    public long getReusedFrameCount() {
+        return framePool == null ? 0 : framePool.reused;
+    }
+
     void run(long cycles, long timeout) throws Throwable {
         long endTime = timeout >= 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
         while (frame != null) {
@@ -201,10 +316,10 @@ public final class VirtualMachine implements Serializable {
                     //  + A static field declared by T is assigned.
                     //  + A static field declared by T is used and the field is not a constant variable (§4.12.4).
                     //  + T is a top level class (§7.6), and an assert statement (§14.10) lexically nested within T (§8.1.3) is executed.
-                    Class clinitCls = insn.getClassForClinit();
-                    if (clinitCls != null && InvokeStaticInitializer.shouldClinit(this, clinitCls)) {
+                    InvokeStaticInitializer.Target clinit = insn.getClinitTarget();
+                    if (clinit != null && !isClinited(clinit)) {
                         cp--;
-                        InvokeStaticInitializer.invoke(this, clinitCls);
+                        InvokeStaticInitializer.invoke(this, clinit.cls);
                         insn = insns[cp++];
                     }
                     insn.execute(this);
@@ -280,6 +395,7 @@ public final class VirtualMachine implements Serializable {
         synchronized (this) {
             try {
                 CustomClassLoaderObjectOutputStream oos = new CustomClassLoaderObjectOutputStream(out);
+                oos.writeObject(getSummary());
                 oos.writeObject(this);
             } catch (NotSerializableException e) {
                 throw new VirtualMachineException("Instance of illegal class [" + e.getMessage() + "] at " + getPointer(), e);
@@ -313,6 +429,22 @@ public final class VirtualMachine implements Serializable {
         breakpoints.clear();
     }
 
+    public boolean hasBreakpoints(Class<?> cls) {
+        if (breakpoints.isEmpty()) {
+            return false;
+        }
+        for (Breakpoint bp : breakpoints) {
+            if (bp.getClazz().equals(cls.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Summary getSummary() {
+        return new Summary(isActive(), stepNumber, getPointer(), marks);
+    }
+
     public StackTraceElement getPointer() {
         if (frame == null) {
             return null;
@@ -340,8 +472,10 @@ public final class VirtualMachine implements Serializable {
                     return true;
                 }
             }
+            Frame dead = frame;
             setCp(frame.getRet());
             setFrame(frame.getParent());
+            dead.release();
         }
         return false;
     }
@@ -385,6 +519,8 @@ public final class VirtualMachine implements Serializable {
     public void setFrame(Frame frame) {
         this.frame = frame;
         if (frame == null) return;
+        if (framePool == null) framePool = new FramePool();
+        frame.pool = framePool;
         insns = frame.getCode().insns;
         excpts = frame.getCode().excpts;
     }
@@ -407,15 +543,102 @@ public final class VirtualMachine implements Serializable {
     }
 
     public boolean isClinited(Class cls) {
-        return clinitedClasses.contains(cls);
+        InvokeStaticInitializer.Target target = InvokeStaticInitializer.targetOf(cls).orNull();
+        return target == null || isClinited(target);
+    }
+
+    boolean isClinited(InvokeStaticInitializer.Target target) {
+        return getClinited(target.loader).get(target.index);
     }
 
     public void onClinited(Class cls) {
-        clinitedClasses.add(cls);
+        InvokeStaticInitializer.Target target = InvokeStaticInitializer.targetOf(cls).orNull();
+        if (target != null) {
+            getClinited(target.loader).set(target.index);
+        }
+    }
+
+    /**
+     * Initialized classes of the loader by their index in the loader.
+     */
+    private BitSet getClinited(MemoryClassLoader loader) {
+        if (loader != clinitedLoader) {
+            BitSet bits = clinited.get(loader);
+            if (bits == null) {
+                clinited.put(loader, bits = new BitSet());
+            }
+            clinitedLoader = loader;
+            clinitedBits = bits;
+        }
+        return clinitedBits;
+    }
+
+    /**
+     * Indices of initialized classes are local to a loader, initialized classes are saved as a set.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        clinitedClasses = new HashSet<Class>();
+        for (Map.Entry<MemoryClassLoader, BitSet> entry : clinited.entrySet()) {
+            BitSet bits = entry.getValue();
+            for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+                clinitedClasses.add(entry.getKey().getInitializedClass(i));
+            }
+        }
+        try {
+            out.defaultWriteObject();
+        } finally {
+            clinitedClasses = null;
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (frame != null && frame.getCode() != null) {
+            // saved instructions may predate the current decoding, the frame's code is decoded now
+            insns = frame.getCode().insns;
+            excpts = frame.getCode().excpts;
+        }
+        clinited = new HashMap<MemoryClassLoader, BitSet>();
+        if (clinitedClasses != null) {
+            for (Class cls : clinitedClasses) {
+                onClinited(cls);
+            }
+            clinitedClasses = null;
+        }
+    }
+
+    /**
+     * Keeps static fields of program classes in this VM instead of the classes, so many VMs can run on one class loader.
+     * Must be set before the program runs. Host code calling program classes directly still sees the class fields.
+     */
+    public void setVirtualStatics(boolean virtualStatics) {
+        this.virtualStatics = virtualStatics;
+    }
+
+    public boolean isVirtualStatics() {
+        return virtualStatics;
+    }
+
+    /**
+     * @return true if the static field is stored in this VM
+     */
+    public boolean isVirtualStatic(Field f) {
+        return virtualStatics && f.getDeclaringClass().getClassLoader() == classLoader;
+    }
+
+    public boolean hasStaticValue(FieldRef f) {
+        return staticValues.containsKey(f);
+    }
+
+    public Object getStaticValue(FieldRef f) {
+        return staticValues.get(f);
     }
 
     public void setStaticValue(FieldRef f, Object value) {
-        staticValues.remove(f);
+        if (!virtualStatics) {
+            // keep the order of writes for restoreStatics
+            staticValues.remove(f);
+        }
         staticValues.put(f, value);
     }
 
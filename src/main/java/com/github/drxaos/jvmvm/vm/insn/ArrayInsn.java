@@ -0,0 +1,102 @@
+package com.github.drxaos.jvmvm.vm.insn;
+
+import com.github.drxaos.jvmvm.vm.Frame;
+import com.github.drxaos.jvmvm.vm.VirtualMachine;
+
+import static org.objectweb.asm.Opcodes.BALOAD;
+import static org.objectweb.asm.Opcodes.BASTORE;
+
+/**
+ * BALOAD and BASTORE for an array type known from type analysis.
+ */
+public abstract class ArrayInsn extends Insn {
+
+    /**
+     * @param arrayDesc descriptor of the array operand, or null if unknown
+     */
+    public static Insn getInsn(int opcode, String arrayDesc) {
+        if (opcode == BALOAD && "[B".equals(arrayDesc)) return ByteLoadInsn.instance;
+        if (opcode == BALOAD && "[Z".equals(arrayDesc)) return BooleanLoadInsn.instance;
+        if (opcode == BASTORE && "[B".equals(arrayDesc)) return ByteStoreInsn.instance;
+        if (opcode == BASTORE && "[Z".equals(arrayDesc)) return BooleanStoreInsn.instance;
+        return Insn.getInsn(opcode);
+    }
+
+    static final class ByteLoadInsn extends ArrayInsn {
+        static final ByteLoadInsn instance = new ByteLoadInsn();
+
+        Object readResolve() {
+            return instance;
+        }
+
+        public void execute(VirtualMachine vm) {
+            Frame frame = vm.getFrame();
+            int t = frame.popInt();
+            frame.pushInt(((byte[]) frame.popObject())[t]);
+        }
+
+        @Override
+        public String toString() {
+            return getOpcodeName(BALOAD) + " [B";
+        }
+    }
+
+    static final class BooleanLoadInsn extends ArrayInsn {
+        static final BooleanLoadInsn instance = new BooleanLoadInsn();
+
+        Object readResolve() {
+            return instance;
+        }
+
+        public void execute(VirtualMachine vm) {
+            Frame frame = vm.getFrame();
+            int t = frame.popInt();
+            frame.pushInt(((boolean[]) frame.popObject())[t] ? 1 : 0);
+        }
+
+        @Override
+        public String toString() {
+            return getOpcodeName(BALOAD) + " [Z";
+        }
+    }
+
+    static final class ByteStoreInsn extends ArrayInsn {
+        static final ByteStoreInsn instance = new ByteStoreInsn();
+
+        Object readResolve() {
+            return instance;
+        }
+
+        public void execute(VirtualMachine vm) {
+            Frame frame = vm.getFrame();
+            int t1 = frame.popInt();
+            int t2 = frame.popInt();
+            ((byte[]) frame.popObject())[t2] = (byte) t1;
+        }
+
+        @Override
+        public String toString() {
+            return getOpcodeName(BASTORE) + " [B";
+        }
+    }
+
+    static final class BooleanStoreInsn extends ArrayInsn {
+        static final BooleanStoreInsn instance = new BooleanStoreInsn();
+
+        Object readResolve() {
+            return instance;
+        }
+
+        public void execute(VirtualMachine vm) {
+            Frame frame = vm.getFrame();
+            int t1 = frame.popInt();
+            int t2 = frame.popInt();
+            ((boolean[]) frame.popObject())[t2] = t1 != 0;
+        }
+
+        @Override
+        public String toString() {
+            return getOpcodeName(BASTORE) + " [Z";
+        }
+    }
+}
@@ -29,11 +29,12 @@
 package com.github.drxaos.jvmvm.vm.insn;
 
 import com.github.drxaos.jvmvm.vm.Frame;
+import com.github.drxaos.jvmvm.vm.InvokeStaticInitializer;
 import com.github.drxaos.jvmvm.vm.VirtualMachine;
+import com.github.drxaos.jvmvm.vm.ref.ConstantPool;
 import com.github.drxaos.jvmvm.vm.ref.FieldRef;
 
 import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
 
 import static org.objectweb.asm.Opcodes.*;
 
@@ -55,26 +56,37 @@ public abstract class FieldInsn extends Insn {
     }
 
     static final class GetStaticInsn extends FieldInsn {
+        private static final long serialVersionUID = -3498156174486385990L;
+
         private final FieldRef f;
+        private transient volatile InvokeStaticInitializer.Target clinit;
 
         GetStaticInsn(String owner, String name, String desc, Class<?> cls) {
-            this.f = new FieldRef(owner, name, desc, cls, true, false);
+            this.f = ConstantPool.of(cls).getFieldRef(owner, name, desc, true, false);
         }
 
         public void execute(VirtualMachine vm) throws Throwable {
             try {
                 Field field = f.get();
 
-                // enable access
-                // TODO check access
-                field.setAccessible(true);
-                Field modifiersField = Field.class.getDeclaredField("modifiers");
-                modifiersField.setAccessible(true);
-                modifiersField.setInt(field, field.getModifiers() & ~Modifier.FINAL);
-
                 Frame frame = vm.getFrame();
                 Class<?> type = field.getType();
-                if (type == int.class || type == byte.class || type == char.class || type == short.class) {
+                if (vm.isVirtualStatic(field) && vm.hasStaticValue(f)) {
+                    Object value = vm.getStaticValue(f);
+                    if (type == int.class || type == byte.class || type == char.class || type == short.class) {
+                        frame.pushInt((Integer) value);
+                    } else if (type == long.class) {
+                        frame.pushLong((Long) value);
+                    } else if (type == float.class) {
+                        frame.pushFloat((Float) value);
+                    } else if (type == double.class) {
+                        frame.pushDouble((Double) value);
+                    } else if (type == boolean.class) {
+                        frame.pushInt((Boolean) value ? 1 : 0);
+                    } else {
+                        frame.pushObject(value);
+                    }
+                } else if (type == int.class || type == byte.class || type == char.class || type == short.class) {
                     frame.pushInt(field.getInt(null));
                 } else if (type == long.class) {
                     frame.pushLong(field.getLong(null));
@@ -93,54 +105,54 @@ public abstract class FieldInsn extends Insn {
         }
 
         @Override
-        public Class getClassForClinit() {
-            return f.get().getDeclaringClass();
+        public InvokeStaticInitializer.Target getClinitTarget() {
+            InvokeStaticInitializer.Target target = clinit;
+            if (target == null) clinit = target = InvokeStaticInitializer.targetOf(f.get().getDeclaringClass());
+            return target.orNull();
         }
     }
 
     static final class PutStaticInsn extends FieldInsn {
+        private static final long serialVersionUID = -1592357527610889692L;
+
         private final FieldRef f;
+        private transient volatile InvokeStaticInitializer.Target clinit;
 
         PutStaticInsn(String owner, String name, String desc, Class<?> cls) {
-            this.f = new FieldRef(owner, name, desc, cls, true, true);
+            this.f = ConstantPool.of(cls).getFieldRef(owner, name, desc, true, true);
         }
 
         public void execute(VirtualMachine vm) throws Throwable {
             try {
                 Field field = f.get();
 
-                // enable access
-                // TODO check access
-                field.setAccessible(true);
-                Field modifiersField = Field.class.getDeclaredField("modifiers");
-                modifiersField.setAccessible(true);
-                modifiersField.setInt(field, field.getModifiers() & ~Modifier.FINAL);
-
                 Frame frame = vm.getFrame();
                 Class<?> type = field.getType();
+                // virtual statics are written to the VM only
+                boolean host = !vm.isVirtualStatic(field);
                 if (type == int.class || type == byte.class || type == char.class || type == short.class) {
                     int value = frame.popInt();
-                    field.setInt(null, value);
+                    if (host) field.setInt(null, value);
                     vm.setStaticValue(f, value);
                 } else if (type == long.class) {
                     long value = frame.popLong();
-                    field.setLong(null, value);
+                    if (host) field.setLong(null, value);
                     vm.setStaticValue(f, value);
                 } else if (type == float.class) {
                     float value = frame.popFloat();
-                    field.setFloat(null, value);
+                    if (host) field.setFloat(null, value);
                     vm.setStaticValue(f, value);
                 } else if (type == double.class) {
                     double value = frame.popDouble();
-                    field.setDouble(null, value);
+                    if (host) field.setDouble(null, value);
                     vm.setStaticValue(f, value);
                 } else if (type == boolean.class) {
                     boolean value = frame.popInt() != 0;
-                    field.setBoolean(null, value);
+                    if (host) field.setBoolean(null, value);
                     vm.setStaticValue(f, value);
                 } else {
                     Object value = frame.popObject();
-                    field.set(null, value);
+                    if (host) field.set(null, value);
                     vm.setStaticValue(f, value);
                 }
             } catch (IllegalAccessException e) {
@@ -149,8 +161,10 @@ public abstract class FieldInsn extends Insn {
         }
 
         @Override
-        public Class getClassForClinit() {
-            return f.get().getDeclaringClass();
+        public InvokeStaticInitializer.Target getClinitTarget() {
+            InvokeStaticInitializer.Target target = clinit;
+            if (target == null) clinit = target = InvokeStaticInitializer.targetOf(f.get().getDeclaringClass());
+            return target.orNull();
         }
     }
 
@@ -158,20 +172,13 @@ public abstract class FieldInsn extends Insn {
         private final FieldRef f;
 
         GetFieldInsn(String owner, String name, String desc, Class<?> cls) {
-            this.f = new FieldRef(owner, name, desc, cls, false, false);
+            this.f = ConstantPool.of(cls).getFieldRef(owner, name, desc, false, false);
         }
 
         public void execute(VirtualMachine vm) throws Throwable {
             try {
                 Field field = f.get();
 
-                // enable access
-                // TODO check access
-                field.setAccessible(true);
-                Field modifiersField = Field.class.getDeclaredField("modifiers");
-                modifiersField.setAccessible(true);
-                modifiersField.setInt(field, field.getModifiers() & ~Modifier.FINAL);
-
                 Frame frame = vm.getFrame();
                 Object obj = frame.popObject();
                 Class<?> type = field.getType();
@@ -198,20 +205,13 @@ public abstract class FieldInsn extends Insn {
         private final FieldRef f;
 
         PutFieldInsn(String owner, String name, String desc, Class<?> cls) {
-            this.f = new FieldRef(owner, name, desc, cls, false, true);
+            this.f = ConstantPool.of(cls).getFieldRef(owner, name, desc, false, true);
         }
 
         public void execute(VirtualMachine vm) throws Throwable {
             try {
                 Field field = f.get();
 
-                // enable access from constructors to final fields and from objects to their private fields
-                // TODO check access
-                field.setAccessible(true);
-                Field modifiersField = Field.class.getDeclaredField("modifiers");
-                modifiersField.setAccessible(true);
-                modifiersField.setInt(field, field.getModifiers() & ~Modifier.FINAL);
-
                 Frame frame = vm.getFrame();
                 Class<?> type = field.getType();
                 if (type == int.class || type == byte.class || type == char.class || type == short.class) {
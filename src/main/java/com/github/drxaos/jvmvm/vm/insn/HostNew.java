@@ -0,0 +1,151 @@
+package com.github.drxaos.jvmvm.vm.insn;
+
+import com.github.drxaos.jvmvm.vm.Frame;
+import com.github.drxaos.jvmvm.vm.GlobalCodeLoader;
+import com.github.drxaos.jvmvm.vm.InvokeStaticInitializer;
+import com.github.drxaos.jvmvm.vm.StackTracedException;
+import com.github.drxaos.jvmvm.vm.Types;
+import com.github.drxaos.jvmvm.vm.VirtualMachine;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collection;
+import java.util.List;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Direct construction of objects whose constructor has no interpreted code.
+ * <p/>
+ * In a {@code NEW C; DUP; args...; INVOKESPECIAL C.<init>} sequence, NEW skips the DUP and pushes nothing,
+ * and the constructor call creates the object through the constructor and pushes it in place of the two copies.
+ * No {@link TypeInsn.LazyNewObject} placeholder is created or replaced. Classes with interpreted constructors
+ * keep the placeholder path. Like other rewrites, both instructions are replaced in place.
+ */
+public final class HostNew {
+
+    private HostNew() {
+    }
+
+    /**
+     * @param labels indices of all labels of the method; the DUP must not be a jump target
+     */
+    public static void fuse(List<Insn> insns, Collection<Integer> labels) {
+        boolean[] boundary = new boolean[insns.size() + 1];
+        for (int label : labels) {
+            boundary[label] = true;
+        }
+        for (int i = 0; i + 1 < insns.size(); i++) {
+            Insn insn = insns.get(i);
+            if (!isNew(insn) || boundary[i + 1] || !(insns.get(i + 1) instanceof Insn.NoArgsInsn)
+                    || ((Insn.NoArgsInsn) insns.get(i + 1)).opcode != DUP) {
+                continue;
+            }
+            int j = findConstructor(insns, i + 2);
+            if (j < 0 || !((MethodInsn.InvokeConstructorInsn) insns.get(j)).owner.equals(((TypeInsn) insn).name)) {
+                continue;
+            }
+            ConstructInsn construct = new ConstructInsn((MethodInsn.InvokeConstructorInsn) insns.get(j));
+            insns.set(i, new NewInsn((TypeInsn) insn, construct));
+            insns.set(j, construct);
+        }
+    }
+
+    private static boolean isNew(Insn insn) {
+        return insn instanceof TypeInsn && ((TypeInsn) insn).opcode == NEW;
+    }
+
+    private static int findConstructor(List<Insn> insns, int start) {
+        int depth = 0;
+        for (int k = start; k < insns.size(); k++) {
+            Insn insn = insns.get(k);
+            if (isNew(insn) || insn instanceof NewInsn) {
+                depth++;
+            } else if (insn instanceof MethodInsn.InvokeConstructorInsn || insn instanceof ConstructInsn) {
+                if (depth == 0) {
+                    return insn instanceof ConstructInsn ? -1 : k;
+                }
+                depth--;
+            }
+        }
+        return -1;
+    }
+
+    static final class NewInsn extends Insn {
+        private final TypeInsn insn;
+        private final ConstructInsn construct;
+
+        NewInsn(TypeInsn insn, ConstructInsn construct) {
+            this.insn = insn;
+            this.construct = construct;
+        }
+
+        public void execute(VirtualMachine vm) {
+            if (construct.isHost()) {
+                vm.setCp(vm.getCp() + 1);
+            } else {
+                insn.execute(vm);
+            }
+        }
+
+        @Override
+        public InvokeStaticInitializer.Target getClinitTarget() {
+            return insn.getClinitTarget();
+        }
+
+        @Override
+        public String toString() {
+            return insn.toString();
+        }
+    }
+
+    static final class ConstructInsn extends Insn {
+        private final MethodInsn.InvokeConstructorInsn insn;
+        private transient volatile Boolean host;
+
+        ConstructInsn(MethodInsn.InvokeConstructorInsn insn) {
+            this.insn = insn;
+        }
+
+        boolean isHost() {
+            Boolean h = host;
+            if (h == null) {
+                Constructor<?> constructor = insn.c.get();
+                host = h = GlobalCodeLoader.get(constructor.getDeclaringClass(), "<init>" + insn.c.getDescriptor()) == null;
+            }
+            return h;
+        }
+
+        public void execute(VirtualMachine vm) throws Throwable {
+            Frame frame = vm.getFrame();
+            Constructor<?> constructor = insn.c.get();
+            if (!isHost() || isPlaceholder(frame.peekTarget(constructor.getParameterTypes()), constructor)) {
+                insn.execute(vm);
+                return;
+            }
+            try {
+                Object[] params = frame.popParameters(constructor.getParameterTypes());
+                frame.pushObject(constructor.newInstance(params));
+            } catch (InstantiationException e) {
+                throw new InstantiationError(Types.getInternalName(constructor));
+            } catch (IllegalAccessException e) {
+                throw new InternalError().initCause(e);
+            } catch (InvocationTargetException e) {
+                throw new StackTracedException(e.getCause());
+            }
+        }
+
+        /**
+         * Frames saved before NEW was fused resume here with the placeholder of the unfused NEW below the parameters.
+         */
+        private static boolean isPlaceholder(Object target, Constructor<?> constructor) {
+            return target instanceof TypeInsn.LazyNewObject
+                    && ((TypeInsn.LazyNewObject) target).getType() == constructor.getDeclaringClass();
+        }
+
+        @Override
+        public String toString() {
+            return insn.toString();
+        }
+    }
+}
@@ -34,7 +34,22 @@ import com.github.drxaos.jvmvm.vm.VirtualMachine;
 import static org.objectweb.asm.Opcodes.IINC;
 
 public final class IincInsn extends Insn {
+    private static final long serialVersionUID = -3126520134255424223L;
+
+    private static final int CACHED_VARS = 16;
+    private static final IincInsn[] cache = new IincInsn[CACHED_VARS * 2];
+
+    static {
+        for (int var = 0; var < CACHED_VARS; var++) {
+            cache[var * 2] = new IincInsn(var, -1);
+            cache[var * 2 + 1] = new IincInsn(var, 1);
+        }
+    }
+
     public static Insn getInsn(int var, int increment) {
+        if (var < CACHED_VARS && (increment == 1 || increment == -1)) {
+            return cache[var * 2 + (increment + 1) / 2];
+        }
         return new IincInsn(var, increment);
     }
 
@@ -47,6 +62,10 @@ public final class IincInsn extends Insn {
         this.increment = increment;
     }
 
+    private Object readResolve() {
+        return getInsn(var, increment);
+    }
+
     public void execute(VirtualMachine vm) {
         Frame frame = vm.getFrame();
         frame.setInt(var, frame.getInt(var) + increment);
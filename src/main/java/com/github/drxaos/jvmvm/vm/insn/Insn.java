@@ -29,6 +29,7 @@
 package com.github.drxaos.jvmvm.vm.insn;
 
 import com.github.drxaos.jvmvm.vm.Frame;
+import com.github.drxaos.jvmvm.vm.InvokeStaticInitializer;
 import com.github.drxaos.jvmvm.vm.Monitor;
 import com.github.drxaos.jvmvm.vm.VirtualMachine;
 import org.objectweb.asm.Opcodes;
@@ -40,6 +41,8 @@ import java.lang.reflect.Field;
 import static org.objectweb.asm.Opcodes.*;
 
 public abstract class Insn implements Serializable {
+    private static final long serialVersionUID = -6071462958393641235L;
+
     public static final Insn[] arrayType = new Insn[0];
 
     public static Insn getInsn(int opcode) {
@@ -52,23 +55,40 @@ public abstract class Insn implements Serializable {
             case ARETURN:
                 return ReturnInsn.getInsn(opcode);
             default:
-                return new NoArgsInsn(opcode);
+                return NoArgsInsn.instances[opcode];
         }
     }
 
     public abstract void execute(VirtualMachine vm) throws Throwable;
 
-    public Class getClassForClinit() {
+    /**
+     * @return class this instruction initializes first, null if there is nothing to initialize
+     */
+    public InvokeStaticInitializer.Target getClinitTarget() {
         return null;
     }
 
     static final class NoArgsInsn extends Insn {
-        private final int opcode;
+        private static final long serialVersionUID = -4152039199048996370L;
+
+        static final NoArgsInsn[] instances = new NoArgsInsn[256];
+
+        static {
+            for (int i = 0; i < instances.length; i++) {
+                instances[i] = new NoArgsInsn(i);
+            }
+        }
+
+        final int opcode;
 
         NoArgsInsn(int opcode) {
             this.opcode = opcode;
         }
 
+        private Object readResolve() {
+            return instances[opcode];
+        }
+
         public strictfp void execute(VirtualMachine vm) throws Throwable {
             Frame frame = vm.getFrame();
             switch (opcode) {
@@ -123,98 +143,94 @@ public abstract class Insn implements Serializable {
 
                 case IALOAD: {
                     int t = frame.popInt();
-                    frame.pushInt(Array.getInt(frame.popObject(), t));
+                    frame.pushInt(((int[]) frame.popObject())[t]);
                     return;
                 }
                 case LALOAD: {
                     int t = frame.popInt();
-                    frame.pushLong(Array.getLong(frame.popObject(), t));
+                    frame.pushLong(((long[]) frame.popObject())[t]);
                     return;
                 }
                 case FALOAD: {
                     int t = frame.popInt();
-                    frame.pushFloat(Array.getFloat(frame.popObject(), t));
+                    frame.pushFloat(((float[]) frame.popObject())[t]);
                     return;
                 }
                 case DALOAD: {
                     int t = frame.popInt();
-                    frame.pushDouble(Array.getDouble(frame.popObject(), t));
+                    frame.pushDouble(((double[]) frame.popObject())[t]);
                     return;
                 }
                 case CALOAD: {
                     int t = frame.popInt();
-                    frame.pushInt(Array.getChar(frame.popObject(), t));
+                    frame.pushInt(((char[]) frame.popObject())[t]);
                     return;
                 }
                 case SALOAD: {
                     int t = frame.popInt();
-                    frame.pushInt(Array.getShort(frame.popObject(), t));
+                    frame.pushInt(((short[]) frame.popObject())[t]);
                     return;
                 }
                 case AALOAD: {
                     int t = frame.popInt();
-                    frame.pushObject(Array.get(frame.popObject(), t));
+                    frame.pushObject(((Object[]) frame.popObject())[t]);
                     return;
                 }
                 case BALOAD: {
                     int t1 = frame.popInt();
                     Object t2 = frame.popObject();
-                    if (t2 instanceof byte[]) frame.pushInt(Array.getByte(t2, t1));
-                    else frame.pushInt(Array.getBoolean(t2, t1) ? 1 : 0);
+                    if (t2 instanceof byte[]) frame.pushInt(((byte[]) t2)[t1]);
+                    else frame.pushInt(((boolean[]) t2)[t1] ? 1 : 0);
                     return;
                 }
                 case IASTORE: {
                     int t1 = frame.popInt();
                     int t2 = frame.popInt();
-                    Array.setInt(frame.popObject(), t2, t1);
+                    ((int[]) frame.popObject())[t2] = t1;
                     return;
                 }
                 case LASTORE: {
                     long t1 = frame.popLong();
                     int t2 = frame.popInt();
-                    Array.setLong(frame.popObject(), t2, t1);
+                    ((long[]) frame.popObject())[t2] = t1;
                     return;
                 }
                 case FASTORE: {
                     float t1 = frame.popFloat();
                     int t2 = frame.popInt();
-                    Array.setFloat(frame.popObject(), t2, t1);
+                    ((float[]) frame.popObject())[t2] = t1;
                     return;
                 }
                 case DASTORE: {
                     double t1 = frame.popDouble();
                     int t2 = frame.popInt();
-                    Array.setDouble(frame.popObject(), t2, t1);
+                    ((double[]) frame.popObject())[t2] = t1;
                     return;
                 }
                 case CASTORE: {
                     char t1 = (char) frame.popInt();
                     int t2 = frame.popInt();
-                    Array.setChar(frame.popObject(), t2, t1);
+                    ((char[]) frame.popObject())[t2] = t1;
                     return;
                 }
                 case SASTORE: {
                     short t1 = (short) frame.popInt();
                     int t2 = frame.popInt();
-                    Array.setShort(frame.popObject(), t2, t1);
+                    ((short[]) frame.popObject())[t2] = t1;
                     return;
                 }
                 case AASTORE: {
                     Object t1 = frame.popObject();
                     int t2 = frame.popInt();
-                    try {
-                        Array.set(frame.popObject(), t2, t1);
-                    } catch (IllegalArgumentException e) {
-                        throw new ArrayStoreException(t1.getClass().toString());
-                    }
+                    ((Object[]) frame.popObject())[t2] = t1;
                     return;
                 }
                 case BASTORE: {
                     int t1 = frame.popInt();
                     int t2 = frame.popInt();
                     Object t3 = frame.popObject();
-                    if (t3 instanceof byte[]) Array.setByte(t3, t2, (byte) t1);
-                    else Array.setBoolean(t3, t2, t1 != 0);
+                    if (t3 instanceof byte[]) ((byte[]) t3)[t2] = (byte) t1;
+                    else ((boolean[]) t3)[t2] = t1 != 0;
                     return;
                 }
 
@@ -39,6 +39,7 @@ public abstract class IntInsn extends Insn {
     public static Insn getInsn(int opcode, int operand) {
         switch (opcode) {
             case BIPUSH:
+                return PushInsn.bytes[operand - Byte.MIN_VALUE];
             case SIPUSH:
                 return new PushInsn(operand, opcode);
             case NEWARRAY:
@@ -51,14 +52,28 @@ public abstract class IntInsn extends Insn {
 
 
     static final class PushInsn extends IntInsn {
+        private static final long serialVersionUID = -8641826367325414121L;
+
+        static final PushInsn[] bytes = new PushInsn[256];
+
+        static {
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = new PushInsn(i + Byte.MIN_VALUE, BIPUSH);
+            }
+        }
+
         private final int opcode;
-        private final int i;
+        final int i;
 
         PushInsn(int i, int opcode) {
             this.i = i;
             this.opcode = opcode;
         }
 
+        private Object readResolve() {
+            return opcode == BIPUSH ? bytes[i - Byte.MIN_VALUE] : this;
+        }
+
         public void execute(VirtualMachine vm) {
             vm.getFrame().pushInt(i);
         }
@@ -37,7 +37,15 @@ import java.util.Map;
 import static org.objectweb.asm.Opcodes.*;
 
 public abstract class JumpInsn extends LabeledInsn {
+    private static final long serialVersionUID = -1217004821814097461L;
+
     public static Insn getInsn(int opcode, Label label) {
+        JumpInsn res = newInsn(opcode, label);
+        res.opcode = opcode;
+        return res;
+    }
+
+    private static JumpInsn newInsn(int opcode, Label label) {
         switch (opcode) {
             case IFEQ:
                 return new IfEqInsn(label);
@@ -83,6 +91,7 @@ public abstract class JumpInsn extends LabeledInsn {
 
     Label label;
     int target;
+    int opcode;
 
     JumpInsn(Label label) {
         this.label = label;
@@ -93,6 +102,11 @@ public abstract class JumpInsn extends LabeledInsn {
         label = null;
     }
 
+    @Override
+    public String toString() {
+        return getOpcodeName(opcode) + " " + target;
+    }
+
 
     static class IfEqInsn extends JumpInsn {
         IfEqInsn(Label label) {
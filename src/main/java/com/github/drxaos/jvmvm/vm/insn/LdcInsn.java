@@ -31,6 +31,7 @@ package com.github.drxaos.jvmvm.vm.insn;
 import com.github.drxaos.jvmvm.vm.Types;
 import com.github.drxaos.jvmvm.vm.VirtualMachine;
 import com.github.drxaos.jvmvm.vm.ref.ClassRef;
+import com.github.drxaos.jvmvm.vm.ref.ConstantPool;
 import org.objectweb.asm.Type;
 
 import static org.objectweb.asm.Opcodes.LDC;
@@ -57,7 +58,9 @@ public abstract class LdcInsn extends Insn {
     }
 
     static final class LdcIntegerInsn extends LdcInsn {
-        private final int i;
+        private static final long serialVersionUID = -7953150512900413258L;
+
+        final int i;
 
         LdcIntegerInsn(Integer i) {
             this.i = i;
@@ -120,7 +123,7 @@ public abstract class LdcInsn extends Insn {
         private final ClassRef c;
 
         LdcClassInsn(Type t, Class<?> c) {
-            this.c = new ClassRef(Types.getInternalName(t), c);
+            this.c = ConstantPool.of(c).getClassRef(Types.getInternalName(t));
         }
 
         public void execute(VirtualMachine vm) {
@@ -32,9 +32,14 @@ import com.github.drxaos.jvmvm.vm.VirtualMachine;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.Opcodes;
 
+import java.util.Arrays;
 import java.util.Map;
 
 public final class LookupSwitchInsn extends LabeledInsn {
+    private static final long serialVersionUID = 3744219975657019030L;
+
+    private static final int MAX_TABLE_SIZE = 1024;
+
     public static Insn getInsn(Label dflt, int[] keys, Label[] labels) {
         return new LookupSwitchInsn(dflt, keys, labels);
     }
@@ -45,6 +50,7 @@ public final class LookupSwitchInsn extends LabeledInsn {
     private Label[] labels;
     private final int[] targets;
     private final int[] keys;
+    private int[] table;
 
     LookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
         this.label = dflt;
@@ -58,20 +64,31 @@ public final class LookupSwitchInsn extends LabeledInsn {
         for (int i = 0; i < labels.length; i++) targets[i] = map.get(labels[i]);
         label = null;
         labels = null;
+
+        // dense keys are looked up by index, sparse ones by binary search (keys are sorted)
+        if (keys.length > 0) {
+            long range = (long) keys[keys.length - 1] - keys[0] + 1;
+            if (range <= MAX_TABLE_SIZE && range <= 2L * keys.length) {
+                table = new int[(int) range];
+                Arrays.fill(table, target);
+                for (int i = 0; i < keys.length; i++) table[keys[i] - keys[0]] = targets[i];
+            }
+        }
     }
 
     public void execute(VirtualMachine vm) {
         int i = vm.getFrame().popInt();
-        for (int j = 0; j < keys.length; j++)
-            if (i == keys[j]) {
-                vm.setCp(targets[j]);
-                return;
-            }
-        vm.setCp(target);
+        if (table != null) {
+            long k = (long) i - keys[0];
+            vm.setCp(k >= 0 && k < table.length ? table[(int) k] : target);
+            return;
+        }
+        int j = Arrays.binarySearch(keys, i);
+        vm.setCp(j >= 0 ? targets[j] : target);
     }
 
     @Override
     public String toString() {
-        return getOpcodeName(Opcodes.LOOKUPSWITCH);
+        return getOpcodeName(Opcodes.LOOKUPSWITCH) + (table != null ? " table" : "");
     }
 }
@@ -29,16 +29,23 @@
 package com.github.drxaos.jvmvm.vm.insn;
 
 import com.github.drxaos.jvmvm.vm.*;
+import com.github.drxaos.jvmvm.vm.ref.ConstantPool;
 import com.github.drxaos.jvmvm.vm.ref.ConstructorRef;
 import com.github.drxaos.jvmvm.vm.ref.MethodRef;
 
+import org.objectweb.asm.Type;
+
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
 
 import static org.objectweb.asm.Opcodes.*;
 
 public abstract class MethodInsn extends Insn {
+    private static final long serialVersionUID = 8768258036629764469L;
+
     public static Insn getInsn(int opcode, String owner, String name, String desc, Class<?> cls) {
         switch (opcode) {
             case INVOKEVIRTUAL:
@@ -56,11 +63,177 @@ public abstract class MethodInsn extends Insn {
         }
     }
 
+    private final int returnSort;
+    private boolean tailCall;
+
+    MethodInsn(String desc) {
+        this.returnSort = Type.getReturnType(desc).getSort();
+    }
+
+    /**
+     * Marks calls directly followed by a matching return, outside of any exception range, as tail calls.
+     * Must run on the final instructions of a method.
+     */
+    public static void markTailCalls(List<Insn> insns, List<ExcptHandler> excpts) {
+        for (int i = 0; i + 1 < insns.size(); i++) {
+            Insn insn = insns.get(i);
+            if (!(insn instanceof MethodInsn) || insn instanceof InvokeConstructorInsn) {
+                continue;
+            }
+            MethodInsn call = (MethodInsn) insn;
+            Insn next = insns.get(i + 1);
+            call.tailCall = next instanceof ReturnInsn && ((ReturnInsn) next).canReturn(call.getReturnClass());
+            for (ExcptHandler excpt : excpts) {
+                if (excpt.start < i + 1 && i + 1 <= excpt.end) call.tailCall = false;
+            }
+        }
+    }
+
+    private Class<?> getReturnClass() {
+        switch (returnSort) {
+            case Type.VOID:
+                return void.class;
+            case Type.LONG:
+                return long.class;
+            case Type.FLOAT:
+                return float.class;
+            case Type.DOUBLE:
+                return double.class;
+            case Type.OBJECT:
+            case Type.ARRAY:
+                return Object.class;
+            default:
+                return int.class;
+        }
+    }
+
+    /**
+     * Enters interpreted code of the callee, replacing the current frame if this is a tail call.
+     */
+    final void invoke(VirtualMachine vm, Frame frame, Method method, MethodCode code) {
+        Frame f;
+        if (tailCall) {
+            f = frame.newTailCallFrame(method, code);
+            vm.onTailCall();
+        } else {
+            f = frame.newCallFrame(vm.getCp(), method, code);
+        }
+        vm.setFrame(f);
+        vm.setCp(0);
+    }
+
+    /**
+     * Pushes the result of a host method, converted by the return type of the call site descriptor.
+     */
+    final void pushResult(Frame frame, Object ret) {
+        switch (returnSort) {
+            case Type.VOID:
+                return;
+            case Type.INT:
+                frame.pushInt((int) (Integer) ret);
+                return;
+            case Type.BOOLEAN:
+                frame.pushInt((Boolean) ret ? 1 : 0);
+                return;
+            case Type.BYTE:
+                frame.pushInt((int) (Byte) ret);
+                return;
+            case Type.SHORT:
+                frame.pushInt((int) (Short) ret);
+                return;
+            case Type.CHAR:
+                frame.pushInt((int) (Character) ret);
+                return;
+            case Type.LONG:
+                frame.pushLong((long) (Long) ret);
+                return;
+            case Type.FLOAT:
+                frame.pushFloat((float) (Float) ret);
+                return;
+            case Type.DOUBLE:
+                frame.pushDouble((double) (Double) ret);
+                return;
+            default:
+                frame.pushObject(ret);
+        }
+    }
+
+    /**
+     * Accessor-shaped callee (field getter or setter, constant return, empty method) executed directly
+     * on the caller frame, without a call frame. Cached per call site for the first receiver class seen there.
+     * Not used while the callee class has breakpoints, so that they are still hit.
+     */
+    static final class Inline {
+        private final Class<?> receiver;
+        private final Class<?> declaringClass;
+        private final Insn body;
+        private final boolean popReceiver;
+
+        private Inline(Class<?> receiver, Class<?> declaringClass, Insn body, boolean popReceiver) {
+            this.receiver = receiver;
+            this.declaringClass = declaringClass;
+            this.body = body;
+            this.popReceiver = popReceiver;
+        }
+
+        static Inline of(Class<?> receiver, Method method, MethodCode code) {
+            if (code.excpts.length > 0 || Modifier.isSynchronized(method.getModifiers()) || Modifier.isStatic(method.getModifiers())) {
+                return null;
+            }
+            Insn[] insns = code.insns;
+            int params = method.getParameterTypes().length;
+            Class<?> declaringClass = method.getDeclaringClass();
+            if (params == 0 && insns.length == 1 && insns[0] == ReturnInsn.instance) {
+                return new Inline(receiver, declaringClass, null, true);
+            }
+            if (params == 0 && insns.length == 2 && isConst(insns[0]) && insns[1] instanceof ReturnInsn) {
+                return new Inline(receiver, declaringClass, insns[0], true);
+            }
+            if (params == 0 && insns.length == 3 && isLoad(insns[0], ALOAD, 0)
+                    && insns[1] instanceof FieldInsn.GetFieldInsn && insns[2] instanceof ReturnInsn) {
+                return new Inline(receiver, declaringClass, insns[1], false);
+            }
+            if (params == 1 && insns.length == 4 && isLoad(insns[0], ALOAD, 0) && isLoad(insns[1], -1, 1)
+                    && insns[2] instanceof FieldInsn.PutFieldInsn && insns[3] == ReturnInsn.instance) {
+                return new Inline(receiver, declaringClass, insns[2], false);
+            }
+            return null;
+        }
+
+        private static boolean isLoad(Insn insn, int opcode, int var) {
+            return insn instanceof VarInsn && ((VarInsn) insn).var == var
+                    && (opcode < 0 ? ((VarInsn) insn).opcode >= ILOAD && ((VarInsn) insn).opcode <= ALOAD : ((VarInsn) insn).opcode == opcode);
+        }
+
+        private static boolean isConst(Insn insn) {
+            if (insn instanceof Insn.NoArgsInsn) {
+                int opcode = ((Insn.NoArgsInsn) insn).opcode;
+                return opcode >= ACONST_NULL && opcode <= DCONST_1;
+            }
+            return insn instanceof IntInsn.PushInsn || insn instanceof LdcInsn && !(insn instanceof LdcInsn.LdcClassInsn);
+        }
+
+        boolean canExecute(VirtualMachine vm, Object target) {
+            return target != null && target.getClass() == receiver && !vm.hasBreakpoints(declaringClass);
+        }
+
+        void execute(VirtualMachine vm) throws Throwable {
+            if (popReceiver) {
+                vm.getFrame().pop();
+            }
+            if (body != null) {
+                body.execute(vm);
+            }
+        }
+    }
+
     static final class InvokeVirtualInsn extends MethodInsn {
         private final MethodRef m;
+        private transient volatile Inline inline;
 
         InvokeVirtualInsn(String owner, String name, String desc, Class<?> cls) {
-            this.m = new MethodRef(owner, name, desc, cls, false, false);
+            super(desc);
+            this.m = ConstantPool.of(cls).getMethodRef(owner, name, desc, false, false);
         }
 
         public void execute(VirtualMachine vm) throws Throwable {
@@ -69,30 +242,27 @@ public abstract class MethodInsn extends Insn {
             method.setAccessible(true); // TODO check access
 
             Object target = frame.getTarget(method.getParameterTypes());
+            Inline inline = this.inline;
+            if (inline != null && inline.canExecute(vm, target)) {
+                inline.execute(vm);
+                return;
+            }
             MethodCode code = m.getCode(target.getClass());
             if (code != null) {
                 method = m.get(target.getClass());
-                Frame f = vm.inTailPosition(method.getReturnType()) ?
-                        frame.newTailCallFrame(method, code) :
-                        frame.newCallFrame(vm.getCp(), method, code);
-                vm.setFrame(f);
-                vm.setCp(0);
+                if (inline == null && (inline = Inline.of(target.getClass(), method, code)) != null) {
+                    this.inline = inline;
+                    if (inline.canExecute(vm, target)) {
+                        inline.execute(vm);
+                        return;
+                    }
+                }
+                invoke(vm, frame, method, code);
             } else {
                 try {
                     Object[] params = frame.popParameters(method.getParameterTypes());
                     Object ret = method.invoke(frame.popObject(), params);
-                    Class<?> type = method.getReturnType();
-                    if (type == int.class || type == byte.class || type == short.class || type == char.class || type == boolean.class) {
-                        frame.pushInt(ret);
-                    } else if (type == long.class) {
-                        frame.pushLong(ret);
-                    } else if (type == float.class) {
-                        frame.pushFloat(ret);
-                    } else if (type == double.class) {
-                        frame.pushDouble(ret);
-                    } else if (type != void.class) {
-                        frame.pushObject(ret);
-                    }
+                    pushResult(frame, ret);
                 } catch (IllegalAccessException e) {
                     throw new InternalError().initCause(e);
                 } catch (InvocationTargetException e) {
@@ -103,10 +273,14 @@ public abstract class MethodInsn extends Insn {
     }
 
     static final class InvokeStaticInsn extends MethodInsn {
+        private static final long serialVersionUID = 1582960383569663858L;
+
         private final MethodRef m;
+        private transient volatile InvokeStaticInitializer.Target clinit;
 
         InvokeStaticInsn(String owner, String name, String desc, Class<?> cls) {
-            this.m = new MethodRef(owner, name, desc, cls, true, false);
+            super(desc);
+            this.m = ConstantPool.of(cls).getMethodRef(owner, name, desc, true, false);
         }
 
         public void execute(VirtualMachine vm) throws Throwable {
@@ -116,27 +290,12 @@ public abstract class MethodInsn extends Insn {
 
             MethodCode code = m.getCode(method.getDeclaringClass());
             if (code != null) {
-                Frame f = vm.inTailPosition(method.getReturnType()) ?
-                        frame.newTailCallFrame(method, code) :
-                        frame.newCallFrame(vm.getCp(), method, code);
-                vm.setFrame(f);
-                vm.setCp(0);
+                invoke(vm, frame, method, code);
             } else {
                 try {
                     Object[] params = frame.popParameters(method.getParameterTypes());
                     Object ret = method.invoke(null, params);
-                    Class<?> type = method.getReturnType();
-                    if (type == int.class || type == byte.class || type == short.class || type == char.class || type == boolean.class) {
-                        frame.pushInt(ret);
-                    } else if (type == long.class) {
-                        frame.pushLong(ret);
-                    } else if (type == float.class) {
-                        frame.pushFloat(ret);
-                    } else if (type == double.class) {
-                        frame.pushDouble(ret);
-                    } else if (type != void.class) {
-                        frame.pushObject(ret);
-                    }
+                    pushResult(frame, ret);
                 } catch (IllegalAccessException e) {
                     throw new InternalError().initCause(e);
                 } catch (InvocationTargetException e) {
@@ -146,16 +305,20 @@ public abstract class MethodInsn extends Insn {
         }
 
         @Override
-        public Class getClassForClinit() {
-            return m.get().getDeclaringClass();
+        public InvokeStaticInitializer.Target getClinitTarget() {
+            InvokeStaticInitializer.Target target = clinit;
+            if (target == null) clinit = target = InvokeStaticInitializer.targetOf(m.get().getDeclaringClass());
+            return target.orNull();
         }
     }
 
     static final class InvokeInterfaceInsn extends MethodInsn {
         private final MethodRef m;
+        private transient volatile Inline inline;
 
         InvokeInterfaceInsn(String owner, String name, String desc, Class<?> cls) {
-            this.m = new MethodRef(owner, name, desc, cls, false, true);
+            super(desc);
+            this.m = ConstantPool.of(cls).getMethodRef(owner, name, desc, false, true);
         }
 
         public void execute(VirtualMachine vm) throws Throwable {
@@ -176,30 +339,27 @@ public abstract class MethodInsn extends Insn {
             if (!method.getDeclaringClass().isInstance(target))
                 throw new IncompatibleClassChangeError(Types.getInternalName(method.getDeclaringClass()));
 
+            Inline inline = this.inline;
+            if (inline != null && inline.canExecute(vm, target)) {
+                inline.execute(vm);
+                return;
+            }
             MethodCode code = m.getCode(target.getClass());
             if (code != null) {
                 method = m.get(target.getClass());
-                Frame f = vm.inTailPosition(method.getReturnType()) ?
-                        frame.newTailCallFrame(method, code) :
-                        frame.newCallFrame(vm.getCp(), method, code);
-                vm.setFrame(f);
-                vm.setCp(0);
+                if (inline == null && (inline = Inline.of(target.getClass(), method, code)) != null) {
+                    this.inline = inline;
+                    if (inline.canExecute(vm, target)) {
+                        inline.execute(vm);
+                        return;
+                    }
+                }
+                invoke(vm, frame, method, code);
             } else {
                 try {
                     Object[] params = frame.popParameters(method.getParameterTypes());
                     Object ret = method.invoke(frame.popObject(), params);
-                    Class<?> type = method.getReturnType();
-                    if (type == int.class || type == byte.class || type == short.class || type == char.class || type == boolean.class) {
-                        frame.pushInt(ret);
-                    } else if (type == long.class) {
-                        frame.pushLong(ret);
-                    } else if (type == float.class) {
-                        frame.pushFloat(ret);
-                    } else if (type == double.class) {
-                        frame.pushDouble(ret);
-                    } else if (type != void.class) {
-                        frame.pushObject(ret);
-                    }
+                    pushResult(frame, ret);
                 } catch (IllegalAccessException e) {
                     throw new InternalError().initCause(e);
                 } catch (InvocationTargetException e) {
@@ -213,7 +373,8 @@ public abstract class MethodInsn extends Insn {
         private final MethodRef m;
 
         InvokeSpecialInsn(String owner, String name, String desc, Class<?> cls) {
-            this.m = new MethodRef(owner, name, desc, cls, false, false);
+            super(desc);
+            this.m = ConstantPool.of(cls).getMethodRef(owner, name, desc, false, false);
         }
 
         public void execute(VirtualMachine vm) throws Throwable {
@@ -225,27 +386,12 @@ public abstract class MethodInsn extends Insn {
 
             MethodCode code = m.getCode(method.getDeclaringClass());
             if (code != null) {
-                Frame f = vm.inTailPosition(method.getReturnType()) ?
-                        frame.newTailCallFrame(method, code) :
-                        frame.newCallFrame(vm.getCp(), method, code);
-                vm.setFrame(f);
-                vm.setCp(0);
+                invoke(vm, frame, method, code);
             } else {
                 try {
                     Object[] params = frame.popParameters(method.getParameterTypes());
                     Object ret = method.invoke(frame.popObject(), params);
-                    Class<?> type = method.getReturnType();
-                    if (type == int.class || type == byte.class || type == short.class || type == char.class || type == boolean.class) {
-                        frame.pushInt(ret);
-                    } else if (type == long.class) {
-                        frame.pushLong(ret);
-                    } else if (type == float.class) {
-                        frame.pushFloat(ret);
-                    } else if (type == double.class) {
-                        frame.pushDouble(ret);
-                    } else if (type != void.class) {
-                        frame.pushObject(ret);
-                    }
+                    pushResult(frame, ret);
                 } catch (IllegalAccessException e) {
                     throw new InternalError().initCause(e);
                 } catch (InvocationTargetException e) {
@@ -256,10 +402,15 @@ public abstract class MethodInsn extends Insn {
     }
 
     static final class InvokeConstructorInsn extends MethodInsn {
-        private final ConstructorRef c;
+        private static final long serialVersionUID = 3477597454406449262L;
+
+        final String owner;
+        final ConstructorRef c;
 
         InvokeConstructorInsn(String owner, String desc, Class<?> cls) {
-            this.c = new ConstructorRef(owner, desc, cls);
+            super("()V");
+            this.owner = owner;
+            this.c = ConstantPool.of(cls).getConstructorRef(owner, desc);
         }
 
         public void execute(VirtualMachine vm) throws Throwable {
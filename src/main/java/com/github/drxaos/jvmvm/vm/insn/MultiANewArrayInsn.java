@@ -32,6 +32,7 @@ import com.github.drxaos.jvmvm.vm.Frame;
 import com.github.drxaos.jvmvm.vm.Types;
 import com.github.drxaos.jvmvm.vm.VirtualMachine;
 import com.github.drxaos.jvmvm.vm.ref.ClassRef;
+import com.github.drxaos.jvmvm.vm.ref.ConstantPool;
 import org.objectweb.asm.Opcodes;
 
 import java.lang.reflect.Array;
@@ -47,7 +48,7 @@ public final class MultiANewArrayInsn extends Insn {
     private final int dims;
 
     MultiANewArrayInsn(String desc, int dims, Class<?> cls) {
-        this.c = new ClassRef(Types.getInternalName(desc.substring(dims)), cls);
+        this.c = ConstantPool.of(cls).getClassRef(Types.getInternalName(desc.substring(dims)));
         this.dims = dims;
     }
 
@@ -0,0 +1,188 @@
+package com.github.drxaos.jvmvm.vm.insn;
+
+import com.github.drxaos.jvmvm.vm.InvokeStaticInitializer;
+import com.github.drxaos.jvmvm.vm.VirtualMachine;
+
+import java.util.Collection;
+import java.util.List;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Peephole optimizer over decoded instructions: folds int constant arithmetic, shortcuts GOTO chains,
+ * and skips DUP/POP pairs and casts that cannot fail.
+ * <p/>
+ * Like {@link RegisterInsn}, a simplified sequence replaces only its first instruction and skips over the rest,
+ * so instruction indices, line numbers and exception ranges stay exact, and sequences never span a label.
+ */
+public final class Peephole {
+    private static final int MAX_GOTO_CHAIN = 16;
+
+    private Peephole() {
+    }
+
+    /**
+     * @param labels     indices of all labels of the method
+     * @param lineStarts indices of the first instructions of lines; jumps never skip over them
+     */
+    public static void optimize(List<Insn> insns, Collection<Integer> labels, Collection<Integer> lineStarts) {
+        boolean[] boundary = new boolean[insns.size() + 1];
+        for (int label : labels) {
+            boundary[label] = true;
+        }
+        boolean[] lineStart = new boolean[insns.size() + 1];
+        for (int start : lineStarts) {
+            lineStart[start] = true;
+        }
+        for (int i = 0; i < insns.size(); i++) {
+            Insn insn = insns.get(i);
+            if (insn instanceof JumpInsn) {
+                retarget(insns, (JumpInsn) insn, i, lineStart);
+            }
+            Insn simplified = simplify(insns, i, boundary);
+            if (simplified != null) {
+                insns.set(i, simplified);
+            }
+        }
+    }
+
+    private static void retarget(List<Insn> insns, JumpInsn jump, int i, boolean[] lineStart) {
+        if (jump.opcode == JSR) {
+            return;
+        }
+        int target = jump.target;
+        for (int hops = 0; hops < MAX_GOTO_CHAIN && target != i && !lineStart[target]
+                && insns.get(target) instanceof JumpInsn.GotoInsn; hops++) {
+            target = ((JumpInsn) insns.get(target)).target;
+        }
+        jump.target = target;
+        if (jump.opcode == GOTO && !lineStart[target] && insns.get(target) instanceof ReturnInsn) {
+            insns.set(i, insns.get(target));
+        }
+    }
+
+    private static Insn simplify(List<Insn> insns, int i, boolean[] boundary) {
+        int n = insns.size();
+        Insn first = insns.get(i);
+        if (isCast(first) && "java/lang/Object".equals(((TypeInsn) first).name)) {
+            return new SkipInsn(null, 1);
+        }
+        if (i + 1 >= n || boundary[i + 1]) {
+            return null;
+        }
+        Insn second = insns.get(i + 1);
+
+        if (isOpcode(first, DUP) && isOpcode(second, POP)) {
+            return new SkipInsn(null, 2);
+        }
+        if (isCast(second) && (isOpcode(first, ACONST_NULL)
+                || first instanceof LdcInsn.LdcStringInsn && "java/lang/String".equals(((TypeInsn) second).name)
+                || isCast(first) && ((TypeInsn) first).name.equals(((TypeInsn) second).name))) {
+            return new SkipInsn(first, 2);
+        }
+
+        if (RegisterInsn.isConst(first) && RegisterInsn.isConst(second) && i + 2 < n && !boundary[i + 2]) {
+            Insn third = insns.get(i + 2);
+            if (third instanceof Insn.NoArgsInsn && RegisterInsn.isIntOp(((Insn.NoArgsInsn) third).opcode)) {
+                int a = RegisterInsn.getConst(first);
+                int b = RegisterInsn.getConst(second);
+                int op = ((Insn.NoArgsInsn) third).opcode;
+                if ((op == IDIV || op == IREM) && b == 0) {
+                    return null;
+                }
+                return new ConstInsn(fold(op, a, b), 3);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isCast(Insn insn) {
+        return insn instanceof TypeInsn && ((TypeInsn) insn).opcode == CHECKCAST;
+    }
+
+    private static boolean isOpcode(Insn insn, int opcode) {
+        return insn instanceof Insn.NoArgsInsn && ((Insn.NoArgsInsn) insn).opcode == opcode;
+    }
+
+    private static int fold(int op, int a, int b) {
+        switch (op) {
+            case IADD:
+                return a + b;
+            case ISUB:
+                return a - b;
+            case IMUL:
+                return a * b;
+            case IDIV:
+                return a / b;
+            case IREM:
+                return a % b;
+            case ISHL:
+                return a << b;
+            case ISHR:
+                return a >> b;
+            case IUSHR:
+                return a >>> b;
+            case IAND:
+                return a & b;
+            case IOR:
+                return a | b;
+            case IXOR:
+                return a ^ b;
+            default:
+                throw new InternalError();
+        }
+    }
+
+    /**
+     * Pushes a folded int constant and skips the instructions it was folded from.
+     */
+    static final class ConstInsn extends Insn {
+        private final int value;
+        private final int length;
+
+        ConstInsn(int value, int length) {
+            this.value = value;
+            this.length = length;
+        }
+
+        public void execute(VirtualMachine vm) {
+            vm.getFrame().pushInt(value);
+            vm.setCp(vm.getCp() + length - 1);
+        }
+
+        @Override
+        public String toString() {
+            return "CONST " + value;
+        }
+    }
+
+    /**
+     * Executes the first instruction of a sequence, if it has any effect, and skips the rest.
+     */
+    static final class SkipInsn extends Insn {
+        private final Insn insn;
+        private final int length;
+
+        SkipInsn(Insn insn, int length) {
+            this.insn = insn;
+            this.length = length;
+        }
+
+        public void execute(VirtualMachine vm) throws Throwable {
+            if (insn != null) {
+                insn.execute(vm);
+            }
+            vm.setCp(vm.getCp() + length - 1);
+        }
+
+        @Override
+        public InvokeStaticInitializer.Target getClinitTarget() {
+            return insn == null ? null : insn.getClinitTarget();
+        }
+
+        @Override
+        public String toString() {
+            return (insn == null ? "SKIP" : insn.toString()) + " +" + (length - 1);
+        }
+    }
+}
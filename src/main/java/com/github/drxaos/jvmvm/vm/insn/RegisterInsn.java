@@ -0,0 +1,265 @@
+package com.github.drxaos.jvmvm.vm.insn;
+
+import com.github.drxaos.jvmvm.vm.Frame;
+import com.github.drxaos.jvmvm.vm.VirtualMachine;
+
+import java.util.Collection;
+import java.util.List;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Register form of short int sequences: operands are read straight from local variable slots of the frame
+ * and results written back to them, instead of going through the operand stack.
+ * <p/>
+ * Each fused instruction replaces only the first instruction of its sequence and then skips over the rest,
+ * which are left in place. Instruction indices, line numbers, exception ranges and saved frames stay valid,
+ * and a frame restored in the middle of a sequence simply continues with the original instructions.
+ * A fused sequence is executed as one step.
+ */
+public abstract class RegisterInsn extends Insn {
+    static final int CONST = -1;
+
+    final int length;
+    final int aReg;
+    final int aVal;
+    final int bReg;
+    final int bVal;
+
+    RegisterInsn(int length, int aReg, int aVal, int bReg, int bVal) {
+        this.length = length;
+        this.aReg = aReg;
+        this.aVal = aVal;
+        this.bReg = bReg;
+        this.bVal = bVal;
+    }
+
+    /**
+     * Fuses register sequences in place.
+     *
+     * @param labels indices of all labels of the method; sequences never span jump targets,
+     *               exception range boundaries or line starts
+     */
+    public static void translate(List<Insn> insns, Collection<Integer> labels) {
+        boolean[] boundary = new boolean[insns.size() + 1];
+        for (int label : labels) {
+            boundary[label] = true;
+        }
+        for (int i = 0; i < insns.size(); i++) {
+            RegisterInsn fused = fuse(insns, i, boundary);
+            if (fused != null) {
+                insns.set(i, fused);
+                i += fused.length - 1;
+            }
+        }
+    }
+
+    private static RegisterInsn fuse(List<Insn> insns, int i, boolean[] boundary) {
+        int n = insns.size();
+        Insn first = insns.get(i);
+        int aReg = getReg(first);
+        if (aReg == CONST && !isConst(first)) {
+            return null;
+        }
+        int aVal = getConst(first);
+
+        if (i + 1 >= n || boundary[i + 1]) {
+            return null;
+        }
+        Insn second = insns.get(i + 1);
+        if (aReg != CONST && second instanceof JumpInsn && ((JumpInsn) second).opcode >= IFEQ && ((JumpInsn) second).opcode <= IFLE) {
+            JumpInsn jump = (JumpInsn) second;
+            return new CmpJumpInsn(2, jump.opcode - IFEQ + IF_ICMPEQ, aReg, aVal, CONST, 0, jump.target);
+        }
+        int bReg = getReg(second);
+        if (bReg == CONST && !isConst(second)) {
+            return null;
+        }
+        int bVal = getConst(second);
+
+        if (i + 2 >= n || boundary[i + 2]) {
+            return null;
+        }
+        Insn third = insns.get(i + 2);
+        if (third instanceof JumpInsn && ((JumpInsn) third).opcode >= IF_ICMPEQ && ((JumpInsn) third).opcode <= IF_ICMPLE) {
+            JumpInsn jump = (JumpInsn) third;
+            return new CmpJumpInsn(3, jump.opcode, aReg, aVal, bReg, bVal, jump.target);
+        }
+        if (!(third instanceof NoArgsInsn) || !isIntOp(((NoArgsInsn) third).opcode)) {
+            return null;
+        }
+        int op = ((NoArgsInsn) third).opcode;
+
+        if (i + 3 < n && !boundary[i + 3] && insns.get(i + 3) instanceof VarInsn && ((VarInsn) insns.get(i + 3)).opcode == ISTORE) {
+            return new IntOpInsn(4, op, aReg, aVal, bReg, bVal, ((VarInsn) insns.get(i + 3)).var);
+        }
+        return new IntOpInsn(3, op, aReg, aVal, bReg, bVal, CONST);
+    }
+
+    private static int getReg(Insn insn) {
+        if (insn instanceof VarInsn && ((VarInsn) insn).opcode == ILOAD) {
+            return ((VarInsn) insn).var;
+        }
+        return CONST;
+    }
+
+    static boolean isConst(Insn insn) {
+        return insn instanceof NoArgsInsn && ((NoArgsInsn) insn).opcode >= ICONST_M1 && ((NoArgsInsn) insn).opcode <= ICONST_5
+                || insn instanceof IntInsn.PushInsn
+                || insn instanceof LdcInsn.LdcIntegerInsn;
+    }
+
+    static int getConst(Insn insn) {
+        if (insn instanceof NoArgsInsn) {
+            return ((NoArgsInsn) insn).opcode - ICONST_0;
+        } else if (insn instanceof IntInsn.PushInsn) {
+            return ((IntInsn.PushInsn) insn).i;
+        } else if (insn instanceof LdcInsn.LdcIntegerInsn) {
+            return ((LdcInsn.LdcIntegerInsn) insn).i;
+        }
+        return 0;
+    }
+
+    static boolean isIntOp(int opcode) {
+        switch (opcode) {
+            case IADD:
+            case ISUB:
+            case IMUL:
+            case IDIV:
+            case IREM:
+            case ISHL:
+            case ISHR:
+            case IUSHR:
+            case IAND:
+            case IOR:
+            case IXOR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    final int getA(Frame frame) {
+        return aReg == CONST ? aVal : frame.getInt(aReg);
+    }
+
+    final int getB(Frame frame) {
+        return bReg == CONST ? bVal : frame.getInt(bReg);
+    }
+
+    final String operands() {
+        return (aReg == CONST ? "#" + aVal : "r" + aReg) + " " + (bReg == CONST ? "#" + bVal : "r" + bReg);
+    }
+
+    static final class IntOpInsn extends RegisterInsn {
+        private final int op;
+        private final int dest;
+
+        IntOpInsn(int length, int op, int aReg, int aVal, int bReg, int bVal, int dest) {
+            super(length, aReg, aVal, bReg, bVal);
+            this.op = op;
+            this.dest = dest;
+        }
+
+        public void execute(VirtualMachine vm) {
+            Frame frame = vm.getFrame();
+            int a = getA(frame);
+            int b = getB(frame);
+            int r;
+            switch (op) {
+                case IADD:
+                    r = a + b;
+                    break;
+                case ISUB:
+                    r = a - b;
+                    break;
+                case IMUL:
+                    r = a * b;
+                    break;
+                case IDIV:
+                    r = a / b;
+                    break;
+                case IREM:
+                    r = a % b;
+                    break;
+                case ISHL:
+                    r = a << b;
+                    break;
+                case ISHR:
+                    r = a >> b;
+                    break;
+                case IUSHR:
+                    r = a >>> b;
+                    break;
+                case IAND:
+                    r = a & b;
+                    break;
+                case IOR:
+                    r = a | b;
+                    break;
+                case IXOR:
+                    r = a ^ b;
+                    break;
+                default:
+                    throw new InternalError();
+            }
+            if (dest == CONST) {
+                frame.pushInt(r);
+            } else {
+                frame.setInt(dest, r);
+            }
+            vm.setCp(vm.getCp() + length - 1);
+        }
+
+        @Override
+        public String toString() {
+            return getOpcodeName(op) + " " + operands() + (dest == CONST ? "" : " -> r" + dest);
+        }
+    }
+
+    static final class CmpJumpInsn extends RegisterInsn {
+        private final int cond;
+        private final int target;
+
+        CmpJumpInsn(int length, int cond, int aReg, int aVal, int bReg, int bVal, int target) {
+            super(length, aReg, aVal, bReg, bVal);
+            this.cond = cond;
+            this.target = target;
+        }
+
+        public void execute(VirtualMachine vm) {
+            Frame frame = vm.getFrame();
+            int a = getA(frame);
+            int b = getB(frame);
+            boolean jump;
+            switch (cond) {
+                case IF_ICMPEQ:
+                    jump = a == b;
+                    break;
+                case IF_ICMPNE:
+                    jump = a != b;
+                    break;
+                case IF_ICMPLT:
+                    jump = a < b;
+                    break;
+                case IF_ICMPGE:
+                    jump = a >= b;
+                    break;
+                case IF_ICMPGT:
+                    jump = a > b;
+                    break;
+                case IF_ICMPLE:
+                    jump = a <= b;
+                    break;
+                default:
+                    throw new InternalError();
+            }
+            vm.setCp(jump ? target : vm.getCp() + length - 1);
+        }
+
+        @Override
+        public String toString() {
+            return getOpcodeName(cond) + " " + operands() + " " + target;
+        }
+    }
+}
@@ -6,6 +6,8 @@ import com.github.drxaos.jvmvm.vm.VirtualMachine;
 import static org.objectweb.asm.Opcodes.*;
 
 public class ReturnInsn extends Insn {
+    private static final long serialVersionUID = -398654662166576813L;
+
     static final ReturnInsn instance = new ReturnInsn();
 
     public static Insn getInsn(int opcode) {
@@ -25,6 +27,10 @@ public class ReturnInsn extends Insn {
         }
     }
 
+    Object readResolve() {
+        return instance;
+    }
+
     public void execute(VirtualMachine vm) {
         Frame frame = vm.getFrame();
         Frame parent = frame.getParent();
@@ -32,6 +38,7 @@ public class ReturnInsn extends Insn {
         vm.setResult(null);
         vm.setCp(frame.getRet());
         vm.setFrame(parent);
+        frame.release();
     }
 
     public boolean canReturn(Class cls) {
@@ -45,8 +52,14 @@ public class ReturnInsn extends Insn {
 
 
     static final class IReturnInsn extends ReturnInsn {
+        private static final long serialVersionUID = 355114184063049052L;
+
         static final IReturnInsn instance = new IReturnInsn();
 
+        Object readResolve() {
+            return instance;
+        }
+
         public void execute(VirtualMachine vm) {
             Frame frame = vm.getFrame();
             Frame parent = frame.getParent();
@@ -58,6 +71,7 @@ public class ReturnInsn extends Insn {
             }
             vm.setCp(frame.getRet());
             vm.setFrame(parent);
+            frame.release();
         }
 
         public boolean canReturn(Class cls) {
@@ -71,8 +85,14 @@ public class ReturnInsn extends Insn {
     }
 
     static final class LReturnInsn extends ReturnInsn {
+        private static final long serialVersionUID = -6036393405324430827L;
+
         static final LReturnInsn instance = new LReturnInsn();
 
+        Object readResolve() {
+            return instance;
+        }
+
         public void execute(VirtualMachine vm) {
             Frame frame = vm.getFrame();
             Frame parent = frame.getParent();
@@ -84,6 +104,7 @@ public class ReturnInsn extends Insn {
             }
             vm.setCp(frame.getRet());
             vm.setFrame(parent);
+            frame.release();
         }
 
         public boolean canReturn(Class cls) {
@@ -97,8 +118,14 @@ public class ReturnInsn extends Insn {
     }
 
     static final class FReturnInsn extends ReturnInsn {
+        private static final long serialVersionUID = 8266033148327380022L;
+
         static final FReturnInsn instance = new FReturnInsn();
 
+        Object readResolve() {
+            return instance;
+        }
+
         public void execute(VirtualMachine vm) {
             Frame frame = vm.getFrame();
             Frame parent = frame.getParent();
@@ -110,6 +137,7 @@ public class ReturnInsn extends Insn {
             }
             vm.setCp(frame.getRet());
             vm.setFrame(parent);
+            frame.release();
         }
 
         public boolean canReturn(Class cls) {
@@ -123,8 +151,14 @@ public class ReturnInsn extends Insn {
     }
 
     static final class DReturnInsn extends ReturnInsn {
+        private static final long serialVersionUID = 5682379339026392930L;
+
         static final DReturnInsn instance = new DReturnInsn();
 
+        Object readResolve() {
+            return instance;
+        }
+
         public void execute(VirtualMachine vm) {
             Frame frame = vm.getFrame();
             Frame parent = frame.getParent();
@@ -136,6 +170,7 @@ public class ReturnInsn extends Insn {
             }
             vm.setCp(frame.getRet());
             vm.setFrame(parent);
+            frame.release();
         }
 
         public boolean canReturn(Class cls) {
@@ -149,8 +184,14 @@ public class ReturnInsn extends Insn {
     }
 
     static final class AReturnInsn extends ReturnInsn {
+        private static final long serialVersionUID = 1623571439411575407L;
+
         static final AReturnInsn instance = new AReturnInsn();
 
+        Object readResolve() {
+            return instance;
+        }
+
         public void execute(VirtualMachine vm) {
             Frame frame = vm.getFrame();
             Frame parent = frame.getParent();
@@ -162,6 +203,7 @@ public class ReturnInsn extends Insn {
             }
             vm.setCp(frame.getRet());
             vm.setFrame(parent);
+            frame.release();
         }
 
         public boolean canReturn(Class cls) {
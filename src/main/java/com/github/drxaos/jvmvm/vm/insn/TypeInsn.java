@@ -30,9 +30,11 @@ package com.github.drxaos.jvmvm.vm.insn;
 
 import com.github.drxaos.jvmvm.SilentObjectCreator;
 import com.github.drxaos.jvmvm.vm.Frame;
+import com.github.drxaos.jvmvm.vm.InvokeStaticInitializer;
 import com.github.drxaos.jvmvm.vm.ref.FieldRef;
 import com.github.drxaos.jvmvm.vm.VirtualMachine;
 import com.github.drxaos.jvmvm.vm.ref.ClassRef;
+import com.github.drxaos.jvmvm.vm.ref.ConstantPool;
 
 import java.io.Serializable;
 import java.lang.reflect.Array;
@@ -43,11 +45,15 @@ import java.util.List;
 import static org.objectweb.asm.Opcodes.*;
 
 public final class TypeInsn extends Insn {
+    private static final long serialVersionUID = 5338726638465489674L;
+
     public static Insn getInsn(int opcode, String name, Class<?> cls) {
         return new TypeInsn(opcode, name, cls);
     }
 
     public final static class LazyNewObject implements Serializable {
+        private static final long serialVersionUID = -796512516144323494L;
+
         class SetTo implements Serializable {
             FieldRef fieldRef;
             Object target;
@@ -121,10 +127,17 @@ public final class TypeInsn extends Insn {
         public int hashCode() {
             return uniqueId != null ? uniqueId.hashCode() : 0;
         }
+
+        @Override
+        public String toString() {
+            return uniqueId;
+        }
     }
 
-    private final int opcode;
+    final int opcode;
+    final String name;
     private final ClassRef c;
+    private transient volatile InvokeStaticInitializer.Target clinit;
 
     public Class getClazz() {
         return c.get();
@@ -132,7 +145,8 @@ public final class TypeInsn extends Insn {
 
     TypeInsn(int opcode, String name, Class<?> cls) {
         this.opcode = opcode;
-        this.c = new ClassRef(name, cls);
+        this.name = name;
+        this.c = ConstantPool.of(cls).getClassRef(name);
     }
 
     public void execute(VirtualMachine vm) {
@@ -156,8 +170,11 @@ public final class TypeInsn extends Insn {
         }
     }
 
-    public Class getClassForClinit() {
-        return opcode == NEW ? c.get() : null;
+    public InvokeStaticInitializer.Target getClinitTarget() {
+        if (opcode != NEW) return null;
+        InvokeStaticInitializer.Target target = clinit;
+        if (target == null) clinit = target = InvokeStaticInitializer.targetOf(c.get());
+        return target.orNull();
     }
 
     @Override
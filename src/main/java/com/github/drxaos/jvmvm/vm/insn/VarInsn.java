@@ -34,19 +34,43 @@ import com.github.drxaos.jvmvm.vm.VirtualMachine;
 import static org.objectweb.asm.Opcodes.*;
 
 public final class VarInsn extends Insn {
+    private static final long serialVersionUID = 8436745013490779699L;
+
+    private static final int CACHED_VARS = 16;
+    private static final VarInsn[] cache = new VarInsn[(RET + 1) * CACHED_VARS];
+
+    static {
+        int[] opcodes = {ILOAD, LLOAD, FLOAD, DLOAD, ALOAD, ISTORE, LSTORE, FSTORE, DSTORE, ASTORE, RET};
+        for (int opcode : opcodes) {
+            for (int var = 0; var < CACHED_VARS; var++) {
+                cache[opcode * CACHED_VARS + var] = new VarInsn(opcode, var);
+            }
+        }
+    }
+
     public static Insn getInsn(int opcode, int var) {
+        if (var < CACHED_VARS) {
+            VarInsn insn = cache[opcode * CACHED_VARS + var];
+            if (insn != null) {
+                return insn;
+            }
+        }
         return new VarInsn(opcode, var);
     }
 
 
-    private final int opcode;
-    private final int var;
+    final int opcode;
+    final int var;
 
     VarInsn(int opcode, int var) {
         this.opcode = opcode;
         this.var = var;
     }
 
+    private Object readResolve() {
+        return getInsn(opcode, var);
+    }
+
     public void execute(VirtualMachine vm) {
         Frame frame = vm.getFrame();
         switch (opcode) {
@@ -1,47 +1,93 @@
 package com.github.drxaos.jvmvm.vm.placeholders;
 
 import com.github.drxaos.jvmvm.SilentObjectCreator;
+import com.github.drxaos.jvmvm.vm.AccessControl;
 
 import java.io.Serializable;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 
 public class Mapper implements PlaceholderFactory {
+    private static final long serialVersionUID = 6228252143436039921L;
+
+    private static final ClassValue<FieldPlan> plans = new ClassValue<FieldPlan>() {
+        @Override
+        protected FieldPlan computeValue(Class<?> cls) {
+            return new FieldPlan(cls);
+        }
+    };
+
+    /**
+     * Instance fields of a class and its superclasses in a fixed order, and a constructor allocating it
+     * without running any of its constructors. The fingerprint identifies the field names in that order.
+     */
+    static final class FieldPlan {
+        final Field[] fields;
+        final int fingerprint;
+        final Constructor<?> allocator;
+
+        FieldPlan(Class<?> cls) {
+            List<Field> fieldList = new ArrayList<Field>();
+            for (Class tmpClass = cls; tmpClass != null; tmpClass = tmpClass.getSuperclass()) {
+                Field[] declared = tmpClass.getDeclaredFields();
+                Arrays.sort(declared, new Comparator<Field>() {
+                    public int compare(Field a, Field b) {
+                        return a.getName().compareTo(b.getName());
+                    }
+                });
+                for (Field field : declared) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    AccessControl.makeAccessible(field);
+                    AccessControl.makeWritable(field);
+                    fieldList.add(field);
+                }
+            }
+            fields = fieldList.toArray(new Field[fieldList.size()]);
+            int hash = 1;
+            for (Field field : fields) {
+                hash = 31 * hash + (field.getDeclaringClass().getName() + "/" + field.getName()).hashCode();
+            }
+            fingerprint = hash;
+            try {
+                allocator = SilentObjectCreator.allocator(cls, Object.class);
+            } catch (NoSuchMethodException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    public static class Placeholder implements com.github.drxaos.jvmvm.vm.placeholders.Placeholder {
+        private static final long serialVersionUID = -2584724301566651092L;
 
-    public class Placeholder implements com.github.drxaos.jvmvm.vm.placeholders.Placeholder {
-        HashMap fields;
         Class cls;
+        Object[] values;
+        int fingerprint;
+        // values by declaring class and field name, as saved before values were kept in field order
+        HashMap fields;
 
         public Object restore() {
             try {
-                Object obj = SilentObjectCreator.create(cls, Object.class);
-
-                List<Field> fieldList = new ArrayList<Field>();
-                Class tmpClass = cls;
-                while (tmpClass != null) {
-                    fieldList.addAll(Arrays.asList(tmpClass.getDeclaredFields()));
-                    tmpClass = tmpClass.getSuperclass();
+                FieldPlan plan = plans.get(cls);
+                if (values != null && fingerprint != plan.fingerprint) {
+                    throw new IllegalStateException("fields of " + cls.getName() + " changed since the object was saved");
                 }
-                Field modifiersField = Field.class.getDeclaredField("modifiers");
-                modifiersField.setAccessible(true);
-                for (Field field : fieldList) {
-                    field.setAccessible(true);
-                    modifiersField.setInt(field, field.getModifiers() & ~Modifier.FINAL);
-                    Object val = fields.get(field.getDeclaringClass().getName() + "/" + field.getName());
-                    field.set(obj, val);
+                Object obj = plan.allocator.newInstance();
+                for (int i = 0; i < plan.fields.length; i++) {
+                    Field field = plan.fields[i];
+                    field.set(obj, values != null ? values[i] : fields.get(field.getDeclaringClass().getName() + "/" + field.getName()));
                 }
                 return obj;
             } catch (IllegalAccessException e) {
                 throw new RuntimeException(e);
-            } catch (NoSuchFieldException e) {
-                throw new RuntimeException(e);
-            } catch (NoSuchMethodException e) {
-                throw new RuntimeException(e);
             } catch (InstantiationException e) {
                 throw new RuntimeException(e);
             } catch (InvocationTargetException e) {
@@ -56,30 +102,17 @@ public class Mapper implements PlaceholderFactory {
 
     public Serializable replace(Object original) {
         try {
+            FieldPlan plan = plans.get(original.getClass());
             Placeholder placeholder = new Placeholder();
             placeholder.cls = original.getClass();
-            placeholder.fields = new HashMap();
-
-            List<Field> fieldList = new ArrayList<Field>();
-            Class tmpClass = original.getClass();
-            while (tmpClass != null) {
-                fieldList.addAll(Arrays.asList(tmpClass.getDeclaredFields()));
-                tmpClass = tmpClass.getSuperclass();
-            }
-            Field modifiersField = Field.class.getDeclaredField("modifiers");
-            modifiersField.setAccessible(true);
-            for (Field field : fieldList) {
-                field.setAccessible(true);
-                modifiersField.setInt(field, field.getModifiers() & ~Modifier.FINAL);
-                Object val = field.get(original);
-                String key = field.getDeclaringClass().getName() + "/" + field.getName();
-                placeholder.fields.put(key, val);
+            placeholder.values = new Object[plan.fields.length];
+            placeholder.fingerprint = plan.fingerprint;
+            for (int i = 0; i < plan.fields.length; i++) {
+                placeholder.values[i] = plan.fields[i].get(original);
             }
             return placeholder;
         } catch (IllegalAccessException e) {
             throw new RuntimeException(e);
-        } catch (NoSuchFieldException e) {
-            throw new RuntimeException(e);
         }
     }
 
@@ -40,8 +40,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 public final class ClassRef extends SymbolicRef<Class<?>> implements Serializable {
-    private static final Reference<Class<?>> nil = new WeakReference<Class<?>>(null);
-    private transient volatile Reference<Class<?>> cls = nil;
+    private transient volatile Class<?> cls;
 
     private String name;
     private transient Reference<Class<?>> referrer;
@@ -49,7 +48,6 @@ public final class ClassRef extends SymbolicRef<Class<?>> implements Serializabl
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         referrer = new WeakReference<Class<?>>((Class<?>) in.readObject());
         in.defaultReadObject();
-        cls = nil;
     }
 
     private void writeObject(ObjectOutputStream out) throws IOException {
@@ -66,8 +64,9 @@ public final class ClassRef extends SymbolicRef<Class<?>> implements Serializabl
     }
 
     public Class<?> get() {
-        if (cls.get() == null) resolve();
-        return cls.get();
+        Class<?> r = cls;
+        if (r == null) r = resolve();
+        return r;
     }
 
     public static Class<?> get(String name, Class<?> referrer) {
@@ -77,10 +76,11 @@ public final class ClassRef extends SymbolicRef<Class<?>> implements Serializabl
     }
 
 
-    private synchronized void resolve() {
-        if (cls.get() != null) return;
+    private synchronized Class<?> resolve() {
+        if (cls != null) return cls;
         Class<?> c = get(name, referrer.get());
-        cls = new WeakReference<Class<?>>(c);
+        cls = c;
+        return c;
     }
 
     public static final Map<String, Class> primitives;
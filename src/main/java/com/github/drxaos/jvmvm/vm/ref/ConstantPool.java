@@ -0,0 +1,70 @@
+package com.github.drxaos.jvmvm.vm.ref;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Symbolic references of one class, shared by all instructions and exception handlers of its methods.
+ * Identical references are created and resolved once, and stay resolved for the lifetime of the class.
+ */
+public final class ConstantPool {
+    private static final ClassValue<ConstantPool> pools = new ClassValue<ConstantPool>() {
+        @Override
+        protected ConstantPool computeValue(Class<?> cls) {
+            return new ConstantPool(cls);
+        }
+    };
+
+    private final Class<?> referrer;
+    private final Map<String, SymbolicRef<?>> refs = new HashMap<String, SymbolicRef<?>>();
+
+    private ConstantPool(Class<?> referrer) {
+        this.referrer = referrer;
+    }
+
+    public static ConstantPool of(Class<?> referrer) {
+        return pools.get(referrer);
+    }
+
+    public synchronized ClassRef getClassRef(String name) {
+        String key = "C" + name;
+        ClassRef ref = (ClassRef) refs.get(key);
+        if (ref == null) {
+            ref = new ClassRef(name, referrer);
+            refs.put(key, ref);
+        }
+        return ref;
+    }
+
+    public synchronized FieldRef getFieldRef(String owner, String name, String descriptor, boolean expectsStatic,
+                                             boolean expectsPuttable) {
+        String key = "F" + (expectsStatic ? 'S' : 'V') + (expectsPuttable ? 'P' : 'G') + owner + '.' + name + descriptor;
+        FieldRef ref = (FieldRef) refs.get(key);
+        if (ref == null) {
+            ref = new FieldRef(owner, name, descriptor, referrer, expectsStatic, expectsPuttable);
+            refs.put(key, ref);
+        }
+        return ref;
+    }
+
+    public synchronized MethodRef getMethodRef(String owner, String name, String descriptor, boolean expectsStatic,
+                                               boolean expectsInterface) {
+        String key = "M" + (expectsStatic ? 'S' : 'V') + (expectsInterface ? 'I' : 'C') + owner + '.' + name + descriptor;
+        MethodRef ref = (MethodRef) refs.get(key);
+        if (ref == null) {
+            ref = new MethodRef(owner, name, descriptor, referrer, expectsStatic, expectsInterface);
+            refs.put(key, ref);
+        }
+        return ref;
+    }
+
+    public synchronized ConstructorRef getConstructorRef(String owner, String descriptor) {
+        String key = "I" + owner + descriptor;
+        ConstructorRef ref = (ConstructorRef) refs.get(key);
+        if (ref == null) {
+            ref = new ConstructorRef(owner, descriptor, referrer);
+            refs.put(key, ref);
+        }
+        return ref;
+    }
+}
@@ -36,14 +36,12 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.lang.ref.Reference;
-import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Modifier;
 
 public final class ConstructorRef extends SymbolicRef<Constructor<?>> implements Serializable {
-    private static final Reference<Constructor<?>> nil = new WeakReference<Constructor<?>>(null);
-    private transient volatile Reference<Constructor<?>> constructor = nil;
+    private transient volatile Constructor<?> constructor;
 
     private String owner;
     private String descriptor;
@@ -52,7 +50,6 @@ public final class ConstructorRef extends SymbolicRef<Constructor<?>> implements
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         referrer = new WeakReference<Class<?>>((Class<?>) in.readObject());
         in.defaultReadObject();
-        constructor = nil;
     }
 
     private void writeObject(ObjectOutputStream out) throws IOException {
@@ -70,8 +67,9 @@ public final class ConstructorRef extends SymbolicRef<Constructor<?>> implements
     }
 
     public Constructor<?> get() {
-        if (constructor.get() == null) resolve();
-        return constructor.get();
+        Constructor<?> r = constructor;
+        if (r == null) r = resolve();
+        return r;
     }
 
     public static Constructor get(Class<?> cls, String name, String descriptor) {
@@ -84,8 +82,8 @@ public final class ConstructorRef extends SymbolicRef<Constructor<?>> implements
         return descriptor;
     }
 
-    private synchronized void resolve() {
-        if (constructor.get() != null) return;
+    private synchronized Constructor<?> resolve() {
+        if (constructor != null) return constructor;
 
         Class<?> cls = ClassRef.get(owner, referrer.get());
 
@@ -100,7 +98,8 @@ public final class ConstructorRef extends SymbolicRef<Constructor<?>> implements
         AccessControl.checkPermission(c, referrer.get());
         AccessControl.makeAccessible(c);
 
-        constructor = new SoftReference<Constructor<?>>(c);
+        constructor = c;
+        return c;
     }
 
     private static Constructor<?> findConstructor(Class<?> cls, String descriptor) {
@@ -36,14 +36,12 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.lang.ref.Reference;
-import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 
 public final class FieldRef extends SymbolicRef<Field> implements Serializable {
-    private static final Reference<Field> nil = new WeakReference<Field>(null);
-    private transient volatile Reference<Field> field = nil;
+    private transient volatile Field field;
 
     private String owner;
     private String name;
@@ -55,7 +53,6 @@ public final class FieldRef extends SymbolicRef<Field> implements Serializable {
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         referrer = new WeakReference<Class<?>>((Class<?>) in.readObject());
         in.defaultReadObject();
-        field = nil;
     }
 
     private void writeObject(ObjectOutputStream out) throws IOException {
@@ -77,13 +74,14 @@ public final class FieldRef extends SymbolicRef<Field> implements Serializable {
     }
 
     public Field get() {
-        if (field.get() == null) resolve();
-        return field.get();
+        Field r = field;
+        if (r == null) r = resolve();
+        return r;
     }
 
 
-    private synchronized void resolve() {
-        if (field.get() != null) return;
+    private synchronized Field resolve() {
+        if (field != null) return field;
 
         Class<?> cls = ClassRef.get(owner, referrer.get());
 
@@ -97,8 +95,10 @@ public final class FieldRef extends SymbolicRef<Field> implements Serializable {
 
         AccessControl.checkPermission(f, referrer.get());
         AccessControl.makeAccessible(f);
+        AccessControl.makeWritable(f);
 
-        field = new SoftReference<Field>(f);
+        field = f;
+        return f;
     }
 
     private static Field findField(Class<?> cls, String name, String descriptor) {
@@ -38,14 +38,12 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.lang.ref.Reference;
-import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 
 public final class MethodRef extends SymbolicRef<Method> implements Serializable {
-    private static final Reference<Method> nil = new WeakReference<Method>(null);
-    private transient volatile Reference<Method> method = nil;
+    private transient volatile Method method;
 
     private String id;
     private String owner;
@@ -58,7 +56,6 @@ public final class MethodRef extends SymbolicRef<Method> implements Serializable
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         referrer = new WeakReference<Class<?>>((Class<?>) in.readObject());
         in.defaultReadObject();
-        method = nil;
     }
 
     private void writeObject(ObjectOutputStream out) throws IOException {
@@ -81,20 +78,19 @@ public final class MethodRef extends SymbolicRef<Method> implements Serializable
     }
 
     public Method get() {
-        if (method.get() == null) resolve();
-        return method.get();
+        Method r = method;
+        if (r == null) r = resolve();
+        return r;
     }
 
     public Method get(Class<?> cls) {
-        Method m = findMethod(cls, name, descriptor);
-        AccessControl.makeAccessible(m);
+        Method m = VTable.get(cls).find(id);
+        if (m == null) throw new NoSuchMethodError(methodInternalName(cls, name, descriptor));
         return m;
     }
 
     public static Method get(Class<?> cls, String name, String descriptor) {
-        Method m = findMethod(cls, name, descriptor);
-        AccessControl.makeAccessible(m);
-        return m;
+        return findMethod(cls, name, descriptor);
     }
 
     public MethodCode getCode(Class<?> cls) {
@@ -106,8 +102,8 @@ public final class MethodRef extends SymbolicRef<Method> implements Serializable
     }
 
 
-    private synchronized void resolve() {
-        if (method.get() != null) return;
+    private synchronized Method resolve() {
+        if (method != null) return method;
 
         Class<?> cls = ClassRef.get(owner, referrer.get());
 
@@ -130,34 +126,22 @@ public final class MethodRef extends SymbolicRef<Method> implements Serializable
         AccessControl.checkPermission(m, referrer.get());
         AccessControl.makeAccessible(m);
 
-        method = new SoftReference<Method>(m);
+        method = m;
+        return m;
     }
 
     private static Method findMethod(Class<?> cls, String name, String descriptor) {
         assert cls != null;
-        for (Class<?> c = cls; c != null; c = c.getSuperclass()) {
-            for (Method m : c.getDeclaredMethods()) {
-                if (methodMatches(m, name, descriptor)) return m;
-            }
-        }
-        for (Method m : cls.getMethods()) {
-            if (methodMatches(m, name, descriptor)) return m;
-        }
-        throw new NoSuchMethodError(methodInternalName(cls, name, descriptor));
+        Method m = VTable.get(cls).find(name + descriptor);
+        if (m == null) throw new NoSuchMethodError(methodInternalName(cls, name, descriptor));
+        return m;
     }
 
     private static Method findInterfaceMethod(Class<?> cls, String name, String descriptor) {
-        for (Method m : cls.getMethods()) {
-            if (methodMatches(m, name, descriptor)) return m;
-        }
-        for (Method m : Object.class.getDeclaredMethods()) {
-            if (methodMatches(m, name, descriptor)) return m;
-        }
-        throw new NoSuchMethodError(methodInternalName(cls, name, descriptor));
-    }
-
-    private static boolean methodMatches(Method method, String name, String descriptor) {
-        return name.equals(method.getName()) && descriptor.equals(Types.getDescriptor(method));
+        Method m = VTable.get(cls).find(name + descriptor);
+        if (m == null) m = VTable.get(Object.class).findDeclared(name + descriptor);
+        if (m == null) throw new NoSuchMethodError(methodInternalName(cls, name, descriptor));
+        return m;
     }
 
     private static String methodInternalName(Class<?> cls, String name, String descriptor) {
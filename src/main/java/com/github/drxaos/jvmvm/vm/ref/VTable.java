@@ -0,0 +1,98 @@
+package com.github.drxaos.jvmvm.vm.ref;
+
+import com.github.drxaos.jvmvm.vm.AccessControl;
+import com.github.drxaos.jvmvm.vm.Types;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Method table of a class, keyed by name + descriptor, layered over the table of its superclass.
+ * Lookups follow the order of a reflective search: methods declared along the superclass chain, most derived first,
+ * then the remaining public methods, such as those inherited from interfaces.
+ * Methods are made accessible when a lookup returns them, and the result is kept in the table of the class
+ * looked up, so only the first lookup of a method walks the superclass chain.
+ */
+final class VTable {
+    private static final ClassValue<VTable> tables = new ClassValue<VTable>() {
+        @Override
+        protected VTable computeValue(Class<?> cls) {
+            Class<?> superclass = cls.getSuperclass();
+            return new VTable(cls, superclass == null ? null : get(superclass));
+        }
+    };
+
+    private final VTable parent;
+    private final Map<String, Method> declared = new HashMap<String, Method>();
+    private Map<String, Method> inherited = Collections.emptyMap();
+    private final ConcurrentMap<String, Method> found = new ConcurrentHashMap<String, Method>();
+    private final ConcurrentMap<String, Method> foundDeclared = new ConcurrentHashMap<String, Method>();
+
+    private VTable(Class<?> cls, VTable parent) {
+        this.parent = parent;
+        for (Method m : cls.getDeclaredMethods()) {
+            declared.put(m.getName() + Types.getDescriptor(m), m);
+        }
+        for (Method m : cls.getMethods()) {
+            String id = m.getName() + Types.getDescriptor(m);
+            // only public methods the superclass table does not already resolve the same way
+            if (lookupDeclared(id) == null && (parent == null || !m.equals(parent.lookup(id)))) {
+                if (inherited.isEmpty()) inherited = new HashMap<String, Method>();
+                inherited.put(id, m);
+            }
+        }
+    }
+
+    static VTable get(Class<?> cls) {
+        return tables.get(cls);
+    }
+
+    /**
+     * @return method a virtual call of name + descriptor dispatches to on the class, or null
+     */
+    Method find(String id) {
+        Method m = found.get(id);
+        if (m == null && (m = accessible(lookup(id))) != null) {
+            found.put(id, m);
+        }
+        return m;
+    }
+
+    /**
+     * @return method declared by the class or one of its superclasses, or null
+     */
+    Method findDeclared(String id) {
+        Method m = foundDeclared.get(id);
+        if (m == null && (m = accessible(lookupDeclared(id))) != null) {
+            foundDeclared.put(id, m);
+        }
+        return m;
+    }
+
+    private Method lookup(String id) {
+        Method m = lookupDeclared(id);
+        for (VTable t = this; m == null && t != null; t = t.parent) {
+            m = t.inherited.get(id);
+        }
+        return m;
+    }
+
+    private Method lookupDeclared(String id) {
+        for (VTable t = this; t != null; t = t.parent) {
+            Method m = t.declared.get(id);
+            if (m != null) return m;
+        }
+        return null;
+    }
+
+    private static Method accessible(Method m) {
+        if (m != null && !m.isAccessible()) {
+            AccessControl.makeAccessible(m);
+        }
+        return m;
+    }
+}
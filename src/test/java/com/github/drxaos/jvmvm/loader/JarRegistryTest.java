@@ -0,0 +1,36 @@
+package com.github.drxaos.jvmvm.loader;
+
+import com.github.drxaos.jvmvm.compiler.JarRegistry;
+import com.github.drxaos.jvmvm.compiler.JarUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class JarRegistryTest {
+
+    private static byte[] jar(String className) {
+        return JarUtil.pack(Collections.singletonMap(className, new byte[]{(byte) 0xCA, (byte) 0xFE}));
+    }
+
+    @Test
+    public void test_equal_bytes_share_index() throws Exception {
+        byte[] jar = jar("registry.Shared");
+        byte[] copy = jar.clone();
+
+        Assert.assertSame("first registered", jar, JarRegistry.intern(jar));
+        Assert.assertSame("canonical bytes", jar, JarRegistry.intern(copy));
+        Assert.assertSame("one index", JarRegistry.get(jar), JarRegistry.get(copy));
+        Assert.assertNotSame("other content", JarRegistry.get(jar), JarRegistry.get(jar("registry.Other")));
+    }
+
+    @Test
+    public void test_restored_project_interns_jars() throws Exception {
+        byte[] jar = jar("registry.Restored");
+        Project project = new Project("jar-test").addJar(jar.clone());
+        Assert.assertSame("added", JarRegistry.intern(jar), project.jars.get(0));
+
+        Project restored = Project.fromBytes(project.saveToBytes());
+        Assert.assertSame("restored", project.jars.get(0), restored.jars.get(0));
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.drxaos.jvmvm.loader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class TransformedClassCacheTest {
+
+    List<String> bootstrap = Arrays.asList(
+            "java.lang.Object",
+            "java.lang.String",
+            "java.lang.StringBuilder",
+            "java.lang.StringBuffer",
+            "java.io.Serializable"
+    );
+
+    String source = "package cache;\n" +
+            "public class Sample {\n" +
+            "    public static String run() {\n" +
+            "        return new StringBuffer(\"sample\").toString();\n" +
+            "    }\n" +
+            "}\n";
+
+    private byte[] load(Project project) throws Exception {
+        project.classLoader.loadClass("cache.Sample");
+        return project.classLoader.classes.get("cache.Sample");
+    }
+
+    private Project project(String name) throws Exception {
+        return new Project(name)
+                .addFile("cache/Sample.java", source)
+                .addSystemClasses(bootstrap);
+    }
+
+    @Test
+    public void test_shared_between_loaders() throws Exception {
+        byte[] a = load(project("cache-test-a").compile());
+        byte[] b = load(project("cache-test-b").compile());
+
+        Assert.assertSame("transformed once", a, b);
+    }
+
+    @Test
+    public void test_keyed_by_remapping() throws Exception {
+        byte[] plain = load(project("cache-test-plain").compile());
+        byte[] remapped = load(project("cache-test-remapped").remap("java/lang/StringBuffer", "java.lang.StringBuilder").compile());
+
+        Assert.assertNotSame("other remapping", plain, remapped);
+        Assert.assertFalse("remapped bytes", Arrays.equals(plain, remapped));
+    }
+
+    @Test
+    public void test_lru_limit() throws Exception {
+        // entries are counted by length, so one chunk can stand for all of them
+        byte[] chunk = new byte[(int) (TransformedClassCache.MAX_BYTES / 4)];
+        for (int i = 0; i < 4; i++) {
+            TransformedClassCache.put("lru-test-" + i, chunk);
+        }
+        Assert.assertNotNull("fits the limit", TransformedClassCache.get("lru-test-0"));
+
+        TransformedClassCache.put("lru-test-4", chunk);
+        Assert.assertNotNull("recently used", TransformedClassCache.get("lru-test-0"));
+        Assert.assertNull("least recently used", TransformedClassCache.get("lru-test-1"));
+        Assert.assertNotNull("added", TransformedClassCache.get("lru-test-4"));
+
+        TransformedClassCache.put("lru-test-big", new byte[(int) TransformedClassCache.MAX_BYTES + 1]);
+        Assert.assertNull("larger than the cache", TransformedClassCache.get("lru-test-big"));
+        Assert.assertNotNull("kept", TransformedClassCache.get("lru-test-4"));
+    }
+}
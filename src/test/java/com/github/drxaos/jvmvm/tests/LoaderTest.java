@@ -2,7 +2,12 @@ package com.github.drxaos.jvmvm.tests;
 
 import com.github.drxaos.jvmvm.loader.Project;
 import com.github.drxaos.jvmvm.tests.interpretable.LoaderB;
+import com.github.drxaos.jvmvm.tests.interpretable.RemapMerge;
 import com.github.drxaos.jvmvm.loader.MemoryClassLoader;
+import com.github.drxaos.jvmvm.vm.MethodCode;
+import com.github.drxaos.jvmvm.vm.VirtualMachine;
+import com.github.drxaos.jvmvm.vm.ref.ConstantPool;
+import com.github.drxaos.jvmvm.vm.ref.MethodRef;
 import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
 import org.junit.Before;
@@ -10,7 +15,9 @@ import org.junit.Test;
 
 import java.io.*;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class LoaderTest {
 
@@ -19,7 +26,7 @@ public class LoaderTest {
 
     }
 
-    List<String> bootstrap = Arrays.asList(
+    static final List<String> bootstrap = Arrays.asList(
             "java.lang.Object",
             "java.lang.String",
             "java.lang.StringBuilder",
@@ -97,4 +104,162 @@ public class LoaderTest {
         }
         Assert.assertEquals("result", "IA;P;F;CA;IB;CB;BM;", project.getResult());
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void test_baseline_snapshots() throws Exception {
+        // Hibernated saved every 7 steps and when finished, by the version before the snapshot summary
+        ObjectInputStream in = new ObjectInputStream(new FileInputStream("src/test/resources/snapshots/hibernated-baseline.bin"));
+        List<byte[]> snapshots = (List<byte[]>) in.readObject();
+        in.close();
+
+        for (int i = 0; i < snapshots.size(); i++) {
+            Project project = Project.fromBytes(snapshots.get(i));
+            Assert.assertEquals("mark (i=" + i + ")", "saved", project.findMarkedObject("label").toString());
+            int j = 0;
+            while (project.isActive()) {
+                project.step();
+                Assert.assertTrue(j++ < 1000);
+            }
+            Assert.assertEquals("result (i=" + i + ")", "C13#0;14#1;15#2;", project.getResult());
+        }
+    }
+
+    @Test
+    public void test_lazy_restore() throws Exception {
+        String name = LoaderB.class.getCanonicalName().replace(".", "/") + ".java";
+
+        Project project = new Project("lazy-restore-test")
+                .addFile(name, FileUtils.readFileToString(new File("src/test/java/" + name)))
+                .addSystemClasses(bootstrap)
+                .compile()
+                .setupVM(LoaderB.class.getCanonicalName(), "ms", null, new Class[0], new Object[0]);
+        for (int i = 0; i < 100; i++) {
+            project.step();
+        }
+        project.markObject("label", new StringBuilder("saved"));
+        VirtualMachine.Summary expected = project.getSummary();
+
+        Project restoredProject = Project.fromBytes(project.saveToBytes());
+        VirtualMachine.Summary summary = restoredProject.getSummary();
+        Assert.assertTrue("active", restoredProject.isActive());
+        Assert.assertEquals("step", expected.getStepNumber(), summary.getStepNumber());
+        Assert.assertEquals("pointer", expected.getPointer(), summary.getPointer());
+        StringBuilder label = (StringBuilder) restoredProject.findMarkedObject("label");
+        Assert.assertEquals("mark", "saved", label.toString());
+        label.append("-changed");
+        restoredProject.markObject("late", "marked before running");
+        Assert.assertFalse("not deserialized", restoredProject.isVmLoaded());
+
+        Assert.assertEquals("result", "IA;P;F;CA;IB;CB;BM;", restoredProject.run());
+        Assert.assertTrue("deserialized", restoredProject.isVmLoaded());
+        Assert.assertSame("same mark", label, restoredProject.findMarkedObject("label"));
+        Assert.assertEquals("late mark", "marked before running", restoredProject.findMarkedObject("late"));
+        Assert.assertFalse("finished", restoredProject.getSummary().isActive());
+
+        Project finishedProject = Project.fromBytes(restoredProject.saveToBytes());
+        Assert.assertFalse("finished", finishedProject.isActive());
+        Assert.assertEquals("changed mark", "saved-changed", finishedProject.findMarkedObject("label").toString());
+        Assert.assertFalse("not deserialized", finishedProject.isVmLoaded());
+        Assert.assertEquals("result", "IA;P;F;CA;IB;CB;BM;", finishedProject.getResult());
+    }
+
+    @Test
+    public void test_lazy_restore_saved_again() throws Exception {
+        String name = LoaderB.class.getCanonicalName().replace(".", "/") + ".java";
+
+        Project project = new Project("lazy-resave-test")
+                .addFile(name, FileUtils.readFileToString(new File("src/test/java/" + name)))
+                .addSystemClasses(bootstrap)
+                .compile()
+                .setupVM(LoaderB.class.getCanonicalName(), "ms", null, new Class[0], new Object[0]);
+        for (int i = 0; i < 100; i++) {
+            project.step();
+        }
+
+        Project restoredProject = Project.fromBytes(project.saveToBytes());
+        restoredProject.markObject("late", "marked while saved");
+        Project savedAgain = Project.fromBytes(restoredProject.saveToBytes());
+        Assert.assertEquals("late mark", "marked while saved", savedAgain.findMarkedObject("late"));
+        Assert.assertEquals("result", "IA;P;F;CA;IB;CB;BM;", savedAgain.run());
+    }
+
+    @Test
+    public void test_recompile() throws Exception {
+        Project project = new Project("recompile-test")
+                .addFile("inc/A.java", "package inc; public class A { public static String m() { return B.v() + C.w(); } }")
+                .addFile("inc/B.java", "package inc; public class B { public static String v() { return \"b1;\"; } }")
+                .addFile("inc/C.java", "package inc; public class C { public static String w() { return \"c1;\"; } }")
+                .addSystemClasses(bootstrap)
+                .compile()
+                .setupVM("inc.A", "m");
+        Assert.assertEquals("result", "b1;c1;", project.run());
+
+        project.addFile("inc/B.java", "package inc; public class B { public static String v() { return \"b2;\"; } }")
+                .recompile()
+                .setupVM("inc.A", "m");
+        Assert.assertEquals("result", "b2;c1;", project.run());
+
+        project.addFile("inc/D.java", "package inc; public class D { public static String w() { return \"d1;\"; } }")
+                .addFile("inc/A.java", "package inc; public class A { public static String m() { return B.v() + D.w(); } }")
+                .removeFile("inc/C.java")
+                .recompile()
+                .setupVM("inc.A", "m");
+        Assert.assertEquals("result", "b2;d1;", project.run());
+    }
+
+    @Test
+    public void test_method_tables() throws Exception {
+        String name = LoaderB.class.getCanonicalName().replace(".", "/") + ".java";
+
+        Project project = new Project("method-tables-test")
+                .addFile(name, FileUtils.readFileToString(new File("src/test/java/" + name)))
+                .addSystemClasses(bootstrap)
+                .compile();
+
+        Map<String, MethodCode> a = project.getMethods("com.github.drxaos.jvmvm.tests.interpretable.LoaderA");
+        Map<String, MethodCode> b = project.getMethods(LoaderB.class.getCanonicalName());
+
+        Assert.assertNotNull("own method", b.get("m()Ljava/lang/String;"));
+        Assert.assertNotSame("overridden method", a.get("m()Ljava/lang/String;"), b.get("m()Ljava/lang/String;"));
+        Assert.assertSame("inherited method", a.get("main([Ljava/lang/String;)V"), b.get("main([Ljava/lang/String;)V"));
+        Assert.assertTrue("all methods", b.keySet().containsAll(a.keySet()));
+        Assert.assertEquals("entries", b.size(), new HashMap<String, MethodCode>(b).size());
+    }
+
+    @Test
+    public void test_remap_merge() throws Exception {
+        // remapped NEW and CHECKCAST change the type of a value on the stack where both branches meet
+        String name = RemapMerge.class.getCanonicalName().replace(".", "/") + ".java";
+
+        Project project = new Project("remap-test")
+                .addFile(name, FileUtils.readFileToString(new File("src/test/java/" + name)))
+                .addSystemClasses(bootstrap)
+                .remap("java/lang/StringBuffer", "java.lang.StringBuilder")
+                .compile()
+                .setupVM(RemapMerge.class.getCanonicalName(), "run", null, new Class[]{int.class}, new Object[]{1});
+        Assert.assertEquals("result", "pos;3;remapped", project.run());
+        project.setupVM(RemapMerge.class.getCanonicalName(), "run", null, new Class[]{int.class}, new Object[]{0});
+        Assert.assertEquals("result", "neg;3;remapped", project.run());
+    }
+
+    @Test
+    public void test_constant_pool() throws Exception {
+        String name = LoaderB.class.getCanonicalName().replace(".", "/") + ".java";
+
+        Project project = new Project("constant-pool-test")
+                .addFile(name, FileUtils.readFileToString(new File("src/test/java/" + name)))
+                .addSystemClasses(bootstrap)
+                .compile();
+
+        Class<?> cls = project.getClassLoader().loadClass(LoaderB.class.getCanonicalName());
+        ConstantPool pool = ConstantPool.of(cls);
+        MethodRef ref = pool.getMethodRef("java/lang/String", "length", "()I", false, false);
+
+        Assert.assertSame("shared pool", pool, ConstantPool.of(cls));
+        Assert.assertSame("shared ref", ref, pool.getMethodRef("java/lang/String", "length", "()I", false, false));
+        Assert.assertNotSame("static ref", ref, pool.getMethodRef("java/lang/String", "length", "()I", true, false));
+        Assert.assertSame("resolved once", ref.get(), ref.get());
+        Assert.assertSame("class ref", pool.getClassRef("java/lang/String").get(), String.class);
+    }
 }
@@ -0,0 +1,478 @@
+package com.github.drxaos.jvmvm.tests;
+
+import com.github.drxaos.jvmvm.compiler.JarUtil;
+import com.github.drxaos.jvmvm.loader.BreakpointException;
+import com.github.drxaos.jvmvm.loader.Project;
+import com.github.drxaos.jvmvm.tests.interpretable.opt.*;
+import com.github.drxaos.jvmvm.vm.Frame;
+import com.github.drxaos.jvmvm.vm.VirtualMachine;
+import com.github.drxaos.jvmvm.vm.insn.Insn;
+import com.github.drxaos.jvmvm.vm.insn.RegisterInsn;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.objectweb.asm.Opcodes.*;
+
+public class OptimizationTest {
+
+    List<String> bootstrap = Arrays.asList(
+            "java.lang.Object",
+            "java.lang.String",
+            "java.lang.StringBuilder",
+            "java.lang.StringBuffer",
+            "java.lang.StackTraceElement",
+            "java.lang.Throwable",
+            "java.lang.Exception",
+            "java.lang.RuntimeException",
+            "java.lang.ArithmeticException",
+            "java.lang.IllegalStateException",
+            "java.lang.Character",
+            "java.lang.CharSequence",
+            "java.io.Serializable",
+            "sun.reflect.SerializationConstructorAccessorImpl"
+    );
+
+    // fib(15);thrown accumulator;sum;fib(10);count;failed, the deep recursion does not fit the native stack
+    static final String RECURSION = "610;-446463617392817688;31;55;20001;bottom";
+
+    private Project source(String name, Class<?> cls) throws Exception {
+        String file = cls.getCanonicalName().replace(".", "/") + ".java";
+        return new Project(name)
+                .addFile(file, FileUtils.readFileToString(new File("src/test/java/" + file)))
+                .addSystemClasses(bootstrap);
+    }
+
+    private Project compile(String name, Class<?> cls) throws Exception {
+        return source(name, cls).compile();
+    }
+
+    private List<String> insns(Project project, String className, String method) throws Exception {
+        List<String> insns = new ArrayList<String>();
+        for (Insn insn : project.getMethods(className).get(method).insns) {
+            insns.add(insn.toString());
+        }
+        return insns;
+    }
+
+    private Project sequences(String name, boolean peephole) throws Exception {
+        Map<String, byte[]> classes = new HashMap<String, byte[]>();
+        classes.put(SEQUENCES, sequencesClass());
+        return new Project(name)
+                .addJar(JarUtil.pack(classes))
+                // javac needs at least one source
+                .addFile("gen/Entry.java", "package gen; public class Entry { public static int run() { return Sequences.run(); } }")
+                .addSystemClasses(bootstrap)
+                .setPeepholeOptimization(peephole)
+                .compile();
+    }
+
+    static final String SEQUENCES = "gen.Sequences";
+
+    /**
+     * Sequences javac does not emit, it folds constants and threads jumps itself. run() returns 130.
+     */
+    static byte[] sequencesClass() {
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(V1_5, ACC_PUBLIC, "gen/Sequences", null, "java/lang/Object", null);
+        cw.visitSource("Sequences.java", null);
+
+        // 10: a = 3 * 4; 11: return a + 2
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "fold", "()I", null, null);
+        mv.visitCode();
+        line(mv, 10);
+        mv.visitInsn(ICONST_3);
+        mv.visitInsn(ICONST_4);
+        mv.visitInsn(IMUL);
+        mv.visitVarInsn(ISTORE, 0);
+        line(mv, 11);
+        mv.visitVarInsn(ILOAD, 0);
+        mv.visitInsn(ICONST_2);
+        mv.visitInsn(IADD);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(2, 1);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "dupPop", "()I", null, null);
+        mv.visitCode();
+        mv.visitInsn(ICONST_5);
+        mv.visitInsn(DUP);
+        mv.visitInsn(POP);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(2, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "casts", "()Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        mv.visitLdcInsn("s");
+        mv.visitTypeInsn(CHECKCAST, "java/lang/String");
+        mv.visitTypeInsn(CHECKCAST, "java/lang/Object");
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(1, 0);
+        mv.visitEnd();
+
+        // 20: r = a == 0 ? 2 : 1, the jump over the else branch goes through two GOTOs; 21: GOTO; 22: return r
+        mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "chain", "(I)I", null, null);
+        mv.visitCode();
+        Label otherwise = new Label();
+        Label middle = new Label();
+        Label line21 = new Label();
+        Label line22 = new Label();
+        line(mv, 20);
+        mv.visitVarInsn(ILOAD, 0);
+        mv.visitJumpInsn(IFEQ, otherwise);
+        mv.visitInsn(ICONST_1);
+        mv.visitVarInsn(ISTORE, 1);
+        mv.visitJumpInsn(GOTO, middle);
+        mv.visitLabel(otherwise);
+        mv.visitInsn(ICONST_2);
+        mv.visitVarInsn(ISTORE, 1);
+        mv.visitLabel(middle);
+        mv.visitJumpInsn(GOTO, line21);
+        mv.visitLabel(line21);
+        mv.visitLineNumber(21, line21);
+        mv.visitJumpInsn(GOTO, line22);
+        mv.visitLabel(line22);
+        mv.visitLineNumber(22, line22);
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(1, 2);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "ret", "(I)I", null, null);
+        mv.visitCode();
+        Label two = new Label();
+        Label ret = new Label();
+        mv.visitVarInsn(ILOAD, 0);
+        mv.visitJumpInsn(IFEQ, two);
+        mv.visitInsn(ICONST_1);
+        mv.visitJumpInsn(GOTO, ret);
+        mv.visitLabel(two);
+        mv.visitInsn(ICONST_2);
+        mv.visitLabel(ret);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(1, 1);
+        mv.visitEnd();
+
+        // 4 / 2 / 0 with the try range starting after the 4, the handler returns -(3 + 4)
+        mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "guarded", "()I", null, null);
+        mv.visitCode();
+        Label start = new Label();
+        Label end = new Label();
+        Label handler = new Label();
+        mv.visitTryCatchBlock(start, end, handler, "java/lang/ArithmeticException");
+        mv.visitInsn(ICONST_4);
+        mv.visitLabel(start);
+        mv.visitInsn(ICONST_2);
+        mv.visitInsn(IDIV);
+        mv.visitInsn(ICONST_0);
+        mv.visitInsn(IDIV);
+        mv.visitInsn(IRETURN);
+        mv.visitLabel(end);
+        mv.visitLabel(handler);
+        mv.visitInsn(POP);
+        mv.visitInsn(ICONST_3);
+        mv.visitInsn(ICONST_4);
+        mv.visitInsn(IADD);
+        mv.visitInsn(INEG);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(2, 0);
+        mv.visitEnd();
+
+        // fold() + dupPop() + chain(1) + ret(0) + guarded() + casts().hashCode()
+        mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "run", "()I", null, null);
+        mv.visitCode();
+        mv.visitMethodInsn(INVOKESTATIC, "gen/Sequences", "fold", "()I", false);
+        mv.visitMethodInsn(INVOKESTATIC, "gen/Sequences", "dupPop", "()I", false);
+        mv.visitInsn(IADD);
+        mv.visitInsn(ICONST_1);
+        mv.visitMethodInsn(INVOKESTATIC, "gen/Sequences", "chain", "(I)I", false);
+        mv.visitInsn(IADD);
+        mv.visitInsn(ICONST_0);
+        mv.visitMethodInsn(INVOKESTATIC, "gen/Sequences", "ret", "(I)I", false);
+        mv.visitInsn(IADD);
+        mv.visitMethodInsn(INVOKESTATIC, "gen/Sequences", "guarded", "()I", false);
+        mv.visitInsn(IADD);
+        mv.visitMethodInsn(INVOKESTATIC, "gen/Sequences", "casts", "()Ljava/lang/Object;", false);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Object", "hashCode", "()I", false);
+        mv.visitInsn(IADD);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(3, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void line(MethodVisitor mv, int line) {
+        Label label = new Label();
+        mv.visitLabel(label);
+        mv.visitLineNumber(line, label);
+    }
+
+    private int count(Project project, Class<?> cls, String method, Class<?> insnClass) throws Exception {
+        int count = 0;
+        for (Insn insn : project.getMethods(cls.getName()).get(method).insns) {
+            if (insnClass.isInstance(insn)) count++;
+        }
+        return count;
+    }
+
+    private int steps(Project project) throws Exception {
+        int steps = 0;
+        while (project.isActive()) {
+            project.step(false);
+            Assert.assertTrue(steps++ < 10000000);
+        }
+        return steps;
+    }
+
+    @Test
+    public void test_register_translation() throws Exception {
+        Object expected = Arith.run();
+        Project translated = source("register-translated", Arith.class).setRegisterTranslation(true).compile()
+                .setupVM(Arith.class.getName(), "run");
+        Project plain = compile("register-plain", Arith.class).setupVM(Arith.class.getName(), "run");
+
+        int plainSteps = steps(plain);
+        Assert.assertEquals("plain result", expected, plain.getResult());
+        Assert.assertEquals("plain code", 0, count(plain, Arith.class, "run()Ljava/lang/String;", RegisterInsn.class));
+
+        int translatedSteps = steps(translated);
+        Assert.assertTrue("translated code", count(translated, Arith.class, "run()Ljava/lang/String;", RegisterInsn.class) > 0);
+        Assert.assertEquals("translated result", expected, translated.getResult());
+        Assert.assertTrue("fewer steps: " + translatedSteps + " < " + plainSteps, translatedSteps < plainSteps);
+    }
+
+    @Test
+    public void test_typed_insns() throws Exception {
+        Project project = compile("typed-insns", Types.class).setupVM(Types.class.getName(), "run");
+
+        List<String> insns = insns(project, Types.class.getName(), "run()Ljava/lang/String;");
+        Assert.assertTrue("byte array load", insns.contains("BALOAD [B"));
+        Assert.assertTrue("byte array store", insns.contains("BASTORE [B"));
+        Assert.assertTrue("boolean array load", insns.contains("BALOAD [Z"));
+        Assert.assertTrue("boolean array store", insns.contains("BASTORE [Z"));
+
+        Assert.assertEquals("result", Types.run(), project.run());
+    }
+
+    @Test
+    public void test_peephole() throws Exception {
+        Project plain = sequences("peephole-plain", false).setupVM(SEQUENCES, "run");
+        Project optimized = sequences("peephole", true).setupVM(SEQUENCES, "run");
+
+        Assert.assertEquals("plain fold", "ICONST_3", insns(plain, SEQUENCES, "fold()I").get(0));
+        Assert.assertEquals("folded", "CONST 12", insns(optimized, SEQUENCES, "fold()I").get(0));
+        Assert.assertEquals("dup/pop", "SKIP +1", insns(optimized, SEQUENCES, "dupPop()I").get(1));
+        Assert.assertEquals("string cast", "LDC (String) s +1", insns(optimized, SEQUENCES, "casts()Ljava/lang/Object;").get(0));
+        Assert.assertEquals("object cast", "SKIP +0", insns(optimized, SEQUENCES, "casts()Ljava/lang/Object;").get(2));
+
+        List<String> chain = insns(optimized, SEQUENCES, "chain(I)I");
+        Assert.assertEquals("plain chain", "GOTO 7", insns(plain, SEQUENCES, "chain(I)I").get(4));
+        Assert.assertEquals("threaded", "GOTO 8", chain.get(4));
+        Assert.assertEquals("line start kept", "GOTO 8", chain.get(7));
+        Assert.assertEquals("last hop", "GOTO 9", chain.get(8));
+
+        Assert.assertEquals("plain return", "GOTO 5", insns(plain, SEQUENCES, "ret(I)I").get(3));
+        Assert.assertEquals("return", "IRETURN", insns(optimized, SEQUENCES, "ret(I)I").get(3));
+
+        List<String> guarded = insns(optimized, SEQUENCES, "guarded()I");
+        Assert.assertEquals("range start kept", "ICONST_4", guarded.get(0));
+        Assert.assertEquals("handler folded", "CONST 7", guarded.get(7));
+
+        Assert.assertEquals("plain result", 130, plain.run());
+        Assert.assertEquals("optimized result", 130, optimized.run());
+    }
+
+    @Test
+    public void test_peephole_boundaries() throws Exception {
+        Assert.assertEquals("handler", -7, sequences("peephole-handler", true).setupVM(SEQUENCES, "guarded").run());
+
+        Project project = sequences("peephole-breakpoints", true).setupVM(SEQUENCES, "run");
+        project.setBreakpoint(SEQUENCES, 10);
+        project.setBreakpoint(SEQUENCES, 21);
+        List<String> hits = new ArrayList<String>();
+        Object result = null;
+        for (int i = 0; i < 10 && result == null; i++) {
+            try {
+                result = project.run();
+            } catch (BreakpointException e) {
+                hits.add(e.getPointer().getMethodName() + ":" + e.getPointer().getLineNumber());
+            }
+        }
+        // line 10 stops at its start and again at the store after the folded constant
+        Assert.assertEquals("breakpoints", Arrays.asList("fold:10", "fold:10", "chain:21"), hits);
+        Assert.assertEquals("result", 130, result);
+    }
+
+    @Test
+    public void test_lookup_switch() throws Exception {
+        Project project = compile("lookup-switch", Flow.class).setupVM(Flow.class.getName(), "run");
+        Assert.assertTrue("dense", insns(project, Flow.class.getName(), "dense(I)I").contains("LOOKUPSWITCH table"));
+        Assert.assertTrue("sparse", insns(project, Flow.class.getName(), "sparse(I)I").contains("LOOKUPSWITCH"));
+        Assert.assertEquals("result", Flow.run(), project.run());
+    }
+
+    @Test
+    public void test_inline_accessors() throws Exception {
+        Project inlined = compile("inline", Accessors.class).setupVM(Accessors.class.getName(), "run");
+        int inlinedSteps = steps(inlined);
+        Assert.assertEquals("inlined result", Accessors.run(), inlined.getResult());
+
+        Project called = compile("inline-breakpoint", Accessors.class).setupVM(Accessors.class.getName(), "run");
+        called.setBreakpoint(Accessors.class.getName() + "$Point", "unused");
+        int calledSteps = steps(called);
+        Assert.assertEquals("called result", Accessors.run(), called.getResult());
+        Assert.assertTrue("fewer steps: " + inlinedSteps + " < " + calledSteps, inlinedSteps < calledSteps);
+    }
+
+    @Test
+    public void test_frame_reuse() throws Exception {
+        Project project = compile("frames", Recursion.class).setupVM(Recursion.class.getName(), "run");
+        steps(project);
+        Assert.assertEquals("result", RECURSION, project.getResult());
+        Assert.assertTrue("tail calls: " + project.getTailCallCount(), project.getTailCallCount() >= 20000);
+        Assert.assertTrue("reused frames: " + project.getReusedFrameCount(), project.getReusedFrameCount() > 1000);
+        Assert.assertEquals("rerun", RECURSION, compile("frames-run", Recursion.class).setupVM(Recursion.class.getName(), "run").run());
+    }
+
+    @Test
+    public void test_frame_reuse_save_load() throws Exception {
+        Project project = compile("frames-save", Recursion.class).setupVM(Recursion.class.getName(), "run");
+        // inside deep() and then fib(), where calls take frames released by earlier returns
+        List<Integer> checkpoints = Arrays.asList(300, 1000, 3000, 5000);
+        int restores = 0;
+        for (int i = 1; project.isActive(); i++) {
+            project.step(false);
+            if (checkpoints.contains(i)) {
+                if (i > 1000) {
+                    Assert.assertTrue("reused before save", project.getReusedFrameCount() > 0);
+                }
+                project = Project.fromBytes(project.saveToBytes());
+                restores++;
+            }
+            Assert.assertTrue(i < 10000000);
+        }
+        Assert.assertEquals("restores", checkpoints.size(), restores);
+        Assert.assertEquals("result", RECURSION, project.getResult());
+        Assert.assertTrue("reused after load", project.getReusedFrameCount() > 0);
+    }
+
+    @Test
+    public void test_frame_pool_immutable() throws Throwable {
+        Project project = compile("frames-immutable", Recursion.class).setupVM(Recursion.class.getName(), "run");
+        Assert.assertEquals("result", RECURSION, project.run());
+
+        VirtualMachine vm = VirtualMachine.create(project.getClassLoader(), Recursion.class.getName(), "run", null, new Class[0], new Object[0]);
+        // deep() replaces its frame on each call, fail() is the first to go 10 frames deep and then throws through all of them
+        int depth = 0;
+        while (depth < 10) {
+            vm.step();
+            depth = 0;
+            for (Frame frame = vm.getFrame(); frame != null; frame = frame.getParent()) depth++;
+        }
+        List<Frame> parents = new ArrayList<Frame>();
+        List<Object> states = new ArrayList<Object>();
+        for (Frame frame = vm.getFrame().getParent(); frame != null; frame = frame.getParent()) {
+            parents.add(frame);
+            states.add(Arrays.asList(frame.getParent(), frame.getRet(), frame.getMethod(), frame.getCode()));
+        }
+        long reused = vm.getReusedFrameCount();
+
+        vm.getFrame().makeParentImmutable();
+        Assert.assertEquals("result", RECURSION, vm.run());
+
+        for (int i = 0; i < parents.size(); i++) {
+            Frame frame = parents.get(i);
+            Assert.assertEquals("not released", states.get(i), Arrays.asList(frame.getParent(), frame.getRet(), frame.getMethod(), frame.getCode()));
+        }
+        Assert.assertEquals("pool off", reused, vm.getReusedFrameCount());
+    }
+
+    @Test
+    public void test_static_init_once() throws Exception {
+        Assert.assertEquals("first", "0C21222;13", compile("statics", Statics.class).setupVM(Statics.class.getName(), "run").run());
+        Assert.assertEquals("second", "0C21222;13", compile("statics-again", Statics.class).setupVM(Statics.class.getName(), "run").run());
+    }
+
+    @Test
+    public void test_static_init_save_load() throws Exception {
+        Project project = compile("statics-save", Statics.class).setupVM(Statics.class.getName(), "run");
+        // first statement after Counter.count++, its initializer has run
+        project.setBreakpoint(Statics.class.getName(), 27);
+        Object result = null;
+        int restores = 0;
+        for (int i = 0; i < 100 && result == null; i++) {
+            try {
+                result = project.run();
+            } catch (BreakpointException e) {
+                if (restores++ == 0) {
+                    project = Project.fromBytes(project.saveToBytes());
+                }
+            }
+        }
+        Assert.assertTrue("restored", restores > 0);
+        Assert.assertEquals("result", "0C21222;13", result);
+    }
+
+    @Test
+    public void test_dispatch() throws Exception {
+        Assert.assertEquals("result", Dispatch.run(),
+                compile("dispatch", Dispatch.class).setupVM(Dispatch.class.getName(), "run").run());
+    }
+
+    @Test
+    public void test_host_construction() throws Throwable {
+        Project project = compile("construction", Construction.class).setupVM(Construction.class.getName(), "run");
+        Assert.assertEquals("result", Construction.run(), project.run());
+
+        VirtualMachine vm = VirtualMachine.create(project.getClassLoader(), Construction.class.getName(), "run", null, new Class[0], new Object[0]);
+        Pattern placeholder = Pattern.compile("lazy-([^-\\]]+)-");
+        Set<String> placeholders = new TreeSet<String>();
+        while (vm.isActive()) {
+            vm.step();
+            for (Frame frame = vm.getFrame(); frame != null; frame = frame.getParent()) {
+                Matcher m = placeholder.matcher(frame.toString());
+                while (m.find()) placeholders.add(m.group(1));
+            }
+        }
+        // host classes are constructed directly, only the interpreted constructor of Pair goes through a placeholder
+        Assert.assertEquals("placeholders", Collections.singleton(Construction.class.getName() + "$Pair"), placeholders);
+        Assert.assertEquals("result", Construction.run(), vm.getResult());
+    }
+
+    @Test
+    public void test_host_construction_save_load() throws Exception {
+        Project project = compile("construction-save", Construction.class).setupVM(Construction.class.getName(), "run");
+        // label() computes arguments between NEW and INVOKESPECIAL of StringBuilder and of Pair
+        project.setBreakpoint(Construction.class.getName(), 20);
+        Object result = null;
+        int restores = 0;
+        for (int i = 0; i < 100 && result == null; i++) {
+            try {
+                result = project.run();
+            } catch (BreakpointException e) {
+                project = Project.fromBytes(project.saveToBytes());
+                restores++;
+            }
+        }
+        Assert.assertTrue("restored in every call", restores >= 3);
+        Assert.assertEquals("result", Construction.run(), result);
+    }
+}
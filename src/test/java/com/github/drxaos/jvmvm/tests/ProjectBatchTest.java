@@ -0,0 +1,136 @@
+package com.github.drxaos.jvmvm.tests;
+
+import com.github.drxaos.jvmvm.loader.Project;
+import com.github.drxaos.jvmvm.loader.ProjectBatch;
+import com.github.drxaos.jvmvm.loader.ProjectCompilerException;
+import com.github.drxaos.jvmvm.loader.ProjectException;
+import com.github.drxaos.jvmvm.loader.ProjectLoaderException;
+import com.github.drxaos.jvmvm.loader.SystemClassesCallback;
+import com.github.drxaos.jvmvm.tests.interpretable.LoaderB;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class ProjectBatchTest {
+
+    // same system classes as the loader tests, the batch runs the same guest
+    List<String> bootstrap = LoaderTest.bootstrap;
+
+    @Test
+    public void test_batch_compile() throws Exception {
+        String name = LoaderB.class.getCanonicalName().replace(".", "/") + ".java";
+        String source = FileUtils.readFileToString(new File("src/test/java/" + name));
+
+        List<Project> projects = new ArrayList<Project>();
+        for (int i = 0; i < 8; i++) {
+            projects.add(new Project("batch-test-" + i)
+                    .addFile(name, source)
+                    .addSystemClasses(bootstrap));
+        }
+        Project broken = new Project("batch-test-broken")
+                .addFile(name, source.replace("class LoaderB", "class LoaderB {"))
+                .addSystemClasses(bootstrap);
+
+        ProjectBatch batch = new ProjectBatch(4).addAll(projects).add(broken);
+        Map<Project, ProjectCompilerException> failures = batch.compile();
+
+        Assert.assertEquals("failures", 1, failures.size());
+        Assert.assertTrue("broken project failed", failures.containsKey(broken));
+
+        for (Project project : projects) {
+            project.setupVM(LoaderB.class.getCanonicalName(), "ms");
+            Assert.assertEquals("result", "IA;P;F;CA;IB;CB;BM;", project.run());
+        }
+    }
+
+    @Test
+    public void test_batch_restore() throws Exception {
+        String name = LoaderB.class.getCanonicalName().replace(".", "/") + ".java";
+        String source = FileUtils.readFileToString(new File("src/test/java/" + name));
+
+        List<byte[]> snapshots = new ArrayList<byte[]>();
+        for (int i = 0; i < 6; i++) {
+            Project project = new Project("restore-test-" + i)
+                    .addFile(name, source)
+                    .addSystemClasses(bootstrap)
+                    .setSystemClassesCallback(new NoSystemClasses())
+                    .setVirtualStatics(i % 2 == 0)
+                    .compile()
+                    .setupVM(LoaderB.class.getCanonicalName(), "ms");
+            for (int j = 0; j < i * 10; j++) {
+                project.step();
+            }
+            snapshots.add(project.saveToBytes());
+        }
+        snapshots.add(new byte[]{1, 2, 3});
+
+        ProjectBatch batch = new ProjectBatch(4);
+        Map<Integer, ProjectLoaderException> failures = batch.restore(snapshots);
+
+        Assert.assertEquals("failures", 1, failures.size());
+        Assert.assertTrue("broken snapshot failed", failures.containsKey(6));
+
+        List<Project> projects = new ArrayList<Project>(batch.getProjects());
+        Assert.assertEquals("restored", 6, projects.size());
+        for (Project project : projects) {
+            Assert.assertTrue("active", project.isActive());
+            Assert.assertEquals("result", "IA;P;F;CA;IB;CB;BM;", project.run());
+        }
+        // every snapshot restores its own callback instance, projects are grouped by the callback class
+        for (int i = 0; i < projects.size(); i++) {
+            Assert.assertEquals("shared class loader (i=" + i + ")", i % 2 == 0, projects.get(i).isClassLoaderShared());
+        }
+    }
+
+    @Test
+    public void test_batch_restore_callbacks() throws Exception {
+        String name = LoaderB.class.getCanonicalName().replace(".", "/") + ".java";
+        String source = FileUtils.readFileToString(new File("src/test/java/" + name));
+
+        String[] prefixes = {"none.a.", "none.b.", "none.a."};
+        List<byte[]> snapshots = new ArrayList<byte[]>();
+        for (int i = 0; i < prefixes.length; i++) {
+            Project project = new Project("callback-test-" + i)
+                    .addFile(name, source)
+                    .addSystemClasses(bootstrap)
+                    .setSystemClassesCallback(resolvePrefix(prefixes[i]))
+                    .setVirtualStatics(true)
+                    .compile()
+                    .setupVM(LoaderB.class.getCanonicalName(), "ms");
+            snapshots.add(project.saveToBytes());
+        }
+
+        ProjectBatch batch = new ProjectBatch(2);
+        Assert.assertTrue("failures", batch.restore(snapshots).isEmpty());
+
+        List<Project> projects = new ArrayList<Project>(batch.getProjects());
+        for (Project project : projects) {
+            Assert.assertEquals("result", "IA;P;F;CA;IB;CB;BM;", project.run());
+        }
+        // callbacks of one lambda class, only the one capturing the same prefix shares the class loader
+        Assert.assertTrue("same policy", projects.get(0).isClassLoaderShared() && projects.get(2).isClassLoaderShared());
+        Assert.assertFalse("other policy", projects.get(1).isClassLoaderShared());
+        try {
+            projects.get(0).getClassLoader();
+            Assert.fail("shared class loader disabled");
+        } catch (ProjectException e) {
+            // other projects still run on it
+        }
+        Assert.assertNotNull("own class loader", projects.get(1).getClassLoader());
+    }
+
+    static SystemClassesCallback resolvePrefix(String prefix) {
+        return className -> className.startsWith(prefix);
+    }
+
+    static class NoSystemClasses implements SystemClassesCallback {
+        public boolean shouldResolve(String className) {
+            return false;
+        }
+    }
+}
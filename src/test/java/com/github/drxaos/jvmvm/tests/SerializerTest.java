@@ -5,12 +5,15 @@ import com.github.drxaos.jvmvm.loader.ProjectExecutionException;
 import com.github.drxaos.jvmvm.tests.interpretable.CustomExamples;
 import com.github.drxaos.jvmvm.tests.interpretable.MapExamples;
 import com.github.drxaos.jvmvm.tests.interpretable.SystemExamples;
+import com.github.drxaos.jvmvm.vm.placeholders.Mapper;
+import com.github.drxaos.jvmvm.vm.placeholders.Placeholder;
 import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.*;
+import java.lang.reflect.Field;
 import java.net.MalformedURLException;
 import java.nio.charset.Charset;
 import java.util.*;
@@ -167,4 +170,63 @@ public class SerializerTest {
                 .setupVM(SystemExamples.class.getCanonicalName(), "test");
         Object res = project.run();
     }
+
+    @Test
+    public void test_placeholder_fields() throws Exception {
+        // restores failed with "vm load error" while static fields were part of the placeholder
+        Placeholder placeholder = (Placeholder) copy(new Mapper().replace(new Derived("derived", 2, 3)));
+        int instances = Derived.instances;
+        Derived restored = (Derived) placeholder.restore();
+
+        Assert.assertEquals("name", "derived", restored.name);
+        Assert.assertEquals("base count", 2, ((Base) restored).count);
+        Assert.assertEquals("count", 3, restored.count);
+        Assert.assertEquals("no constructor ran", instances, Derived.instances);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_placeholder_fingerprint() throws Exception {
+        Placeholder placeholder = (Placeholder) copy(new Mapper().replace(new Derived("derived", 2, 3)));
+        // same number of fields, other names
+        Field cls = Mapper.Placeholder.class.getDeclaredField("cls");
+        cls.setAccessible(true);
+        cls.set(placeholder, Renamed.class);
+        placeholder.restore();
+    }
+
+    private static Object copy(Serializable object) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        return new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    }
+
+    static class Base {
+        static final Object CONSTANT = new Object();
+        final String name;
+        int count;
+
+        Base(String name, int count) {
+            this.name = name;
+            this.count = count;
+        }
+    }
+
+    static class Derived extends Base {
+        static int instances;
+        int count;
+
+        Derived(String name, int baseCount, int count) {
+            super(name, baseCount);
+            this.count = count;
+            instances++;
+        }
+    }
+
+    static class Renamed {
+        String title;
+        int size;
+        int total;
+    }
 }
@@ -2,6 +2,8 @@ package com.github.drxaos.jvmvm.tests;
 
 import com.github.drxaos.jvmvm.loader.MemoryClassLoader;
 import com.github.drxaos.jvmvm.loader.Project;
+import com.github.drxaos.jvmvm.loader.ProjectException;
+import com.github.drxaos.jvmvm.loader.ProjectLoaderException;
 import com.github.drxaos.jvmvm.tests.interpretable.InheritanceA;
 import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
@@ -9,6 +11,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
+import java.lang.reflect.Field;
 import java.util.Arrays;
 import java.util.List;
 
@@ -112,4 +115,60 @@ public class StaticsTest {
         Assert.assertEquals("result1", "01623785", res1);
         Assert.assertEquals("result2", "0162378523785", res2);
     }
+
+    @Test
+    public void test_vm_virtual_statics() throws Exception {
+        String name = InheritanceA.class.getCanonicalName().replace(".", "/") + ".java";
+
+        Project project = new Project("vm-test")
+                .addFile(name, FileUtils.readFileToString(new File("src/test/java/" + name)))
+                .addSystemClasses(bootstrap)
+                .setVirtualStatics(true)
+                .compile();
+        Project fork = project.fork("vm-test-fork");
+
+        project.setupVM(InheritanceA.class.getCanonicalName(), "main", null, new Class[]{String[].class}, new Object[]{new String[0]});
+        fork.setupVM(InheritanceA.class.getCanonicalName(), "main", null, new Class[]{String[].class}, new Object[]{new String[0]});
+        while (project.isActive() || fork.isActive()) {
+            if (project.isActive()) {
+                project.step();
+            }
+            if (fork.isActive()) {
+                fork.step();
+            }
+        }
+
+        Assert.assertEquals("result1", "01623785", project.getResult());
+        Assert.assertEquals("result2", "01623785", fork.getResult());
+        try {
+            project.getClassLoader();
+            Assert.fail("shared class loader disabled");
+        } catch (ProjectException e) {
+            // the fork runs on it too
+        }
+        Field classLoader = Project.class.getDeclaredField("classLoader");
+        classLoader.setAccessible(true);
+        Class<?> cls = ((MemoryClassLoader) classLoader.get(project)).loadClass(InheritanceA.class.getCanonicalName());
+        Assert.assertNull("class field", cls.getField("out2").get(null));
+    }
+
+    @Test
+    public void test_vm_restart_virtual_statics() throws Exception {
+        String name = InheritanceA.class.getCanonicalName().replace(".", "/") + ".java";
+
+        Project project = new Project("vm-test")
+                .addFile(name, FileUtils.readFileToString(new File("src/test/java/" + name)))
+                .addSystemClasses(bootstrap)
+                .compile()
+                .setupVM(InheritanceA.class.getCanonicalName(), "main", null, new Class[]{String[].class}, new Object[]{new String[0]});
+        Assert.assertEquals("result", "01623785", project.run());
+
+        project.setVirtualStatics(true);
+        try {
+            project.setupVM(InheritanceA.class.getCanonicalName(), "main", null, new Class[]{String[].class}, new Object[]{new String[0]});
+            Assert.fail("virtual statics changed");
+        } catch (ProjectLoaderException e) {
+            // statics of the first run are class fields
+        }
+    }
 }
@@ -0,0 +1,32 @@
+package com.github.drxaos.jvmvm.tests.interpretable;
+
+public class Hibernated {
+    static StringBuilder log = new StringBuilder();
+
+    static class Counter {
+        static int count = init();
+
+        static int init() {
+            log.append("C");
+            return 10;
+        }
+    }
+
+    static String label(int n) {
+        Object lock = new Object();
+        String text = "#" + n;
+        return lock == null ? null : text;
+    }
+
+    static int depth(int n) {
+        return n == 0 ? Counter.count++ : 1 + depth(n - 1);
+    }
+
+    public static String run() {
+        for (int i = 0; i < 3; i++) {
+            log.append(depth(3));
+            log.append(new StringBuilder(label(i)).append(';'));
+        }
+        return log.toString();
+    }
+}
@@ -0,0 +1,14 @@
+package com.github.drxaos.jvmvm.tests.interpretable;
+
+public class RemapMerge {
+
+    public static String run(int n) {
+        Object value = n > 0 ? new StringBuffer("pos") : new StringBuffer("neg");
+        StringBuffer buffer = (StringBuffer) value;
+        String res = buffer.toString();
+        if (buffer.length() > 0) {
+            res += ";" + buffer.length() + (value instanceof StringBuilder ? ";remapped" : ";original");
+        }
+        return res;
+    }
+}
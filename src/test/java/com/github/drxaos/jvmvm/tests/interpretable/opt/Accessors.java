@@ -0,0 +1,40 @@
+package com.github.drxaos.jvmvm.tests.interpretable.opt;
+
+public class Accessors {
+    static class Point {
+        private int x;
+        private long y;
+        private String name;
+
+        int getX() { return x; }
+
+        void setX(int x) { this.x = x; }
+
+        long getY() { return y; }
+
+        void setY(long y) { this.y = y; }
+
+        String getName() { return name; }
+
+        void setName(String name) { this.name = name; }
+
+        int scale() { return 3; }
+
+        String label() { return "p"; }
+
+        void touch() { }
+
+        void unused() { }
+    }
+
+    public static String run() {
+        Point p = new Point();
+        p.setName(p.label());
+        for (int i = 0; i < 200; i++) {
+            p.touch();
+            p.setX(p.getX() + i * p.scale());
+            p.setY(p.getY() - p.getX());
+        }
+        return p.getName() + ";" + p.getX() + ";" + p.getY();
+    }
+}
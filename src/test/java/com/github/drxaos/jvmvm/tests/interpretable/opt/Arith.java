@@ -0,0 +1,21 @@
+package com.github.drxaos.jvmvm.tests.interpretable.opt;
+
+public class Arith {
+    public static String run() {
+        int sum = 0;
+        int x = 7;
+        for (int i = 0; i < 1000; i++) {
+            int t = i * 3;
+            sum = sum + t;
+            if (i % x == 0) sum = sum ^ i;
+            sum = sum - (i >> 2);
+            if (i > 500) x = x + 1;
+            if (sum < 0) sum = -sum;
+        }
+        try {
+            return sum + ";" + x + ";" + (sum / (x - x));
+        } catch (ArithmeticException e) {
+            return sum + ";" + x + ";div";
+        }
+    }
+}
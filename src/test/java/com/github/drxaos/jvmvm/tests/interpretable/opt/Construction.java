@@ -0,0 +1,38 @@
+package com.github.drxaos.jvmvm.tests.interpretable.opt;
+
+public class Construction {
+    static class Pair {
+        final Object a;
+        final Object b;
+
+        Pair(Object a, Object b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        public String toString() {
+            return a + "/" + b;
+        }
+    }
+
+    static String label(int n) {
+        String prefix = "#";
+        return prefix + n;
+    }
+
+    public static String run() {
+        StringBuilder sb = new StringBuilder(16);
+        for (int i = 0; i < 5; i++) {
+            sb.append(new StringBuilder(i % 2 == 0 ? "e" : "o").append(i));
+        }
+        Pair p = new Pair(new StringBuilder("x"), new Pair("" + sb.length(), new StringBuffer("y")));
+        String error;
+        try {
+            throw new IllegalStateException(new StringBuilder("bad").reverse().toString());
+        } catch (IllegalStateException e) {
+            error = e.getMessage();
+        }
+        String labels = new StringBuilder(label(1)).append(new Pair(label(2), label(3))).toString();
+        return sb + ";" + p + ";" + error + ";" + new Object().equals(null) + ";" + labels;
+    }
+}
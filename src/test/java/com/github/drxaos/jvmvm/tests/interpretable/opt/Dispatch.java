@@ -0,0 +1,44 @@
+package com.github.drxaos.jvmvm.tests.interpretable.opt;
+
+public class Dispatch {
+    interface Shape {
+        int area();
+
+        String name();
+    }
+
+    static abstract class Base implements Shape {
+        public String name() { return "S" + area(); }
+
+        public String toString() { return name() + area(); }
+    }
+
+    static class Square extends Base {
+        public int area() { return 4; }
+    }
+
+    static class Big extends Square {
+        public int area() { return super.area() * 10; }
+    }
+
+    static class Same extends Square {
+    }
+
+    static class Line extends Base {
+        public int area() { return 0; }
+
+        public String name() { return "L"; }
+    }
+
+    public static String run() {
+        Shape[] shapes = {new Square(), new Big(), new Same(), new Line()};
+        int total = 0;
+        String names = "";
+        for (int i = 0; i < 8; i++) {
+            Shape s = shapes[i % shapes.length];
+            total += s.area();
+            names += s.name();
+        }
+        return total + ";" + names + ";" + shapes[1] + ";" + shapes[3];
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.drxaos.jvmvm.tests.interpretable.opt;
+
+public class Flow {
+    static int sparse(int k) {
+        switch (k) {
+            case -100000: return 1;
+            case 7: return 2;
+            case 1000: return 3;
+            case 99999: return 4;
+            default: return 0;
+        }
+    }
+
+    static int dense(int k) {
+        switch (k) {
+            case 0: return 10;
+            case 3: return 30;
+            case 5: return 50;
+            default: return -1;
+        }
+    }
+
+    public static String run() {
+        int total = 0;
+        outer:
+        for (int i = -3; i < 10; i++) {
+            for (int j = 0; j < 5; j++) {
+                if (j == 3) continue outer;
+                if (i == 8) break outer;
+                total += dense(i) + sparse(j * 500 - 1000);
+            }
+        }
+        total += sparse(-100000) + sparse(99999) + sparse(1000) + sparse(7) + sparse(8);
+        Object o = "str";
+        String s = (String) o;
+        Object n = null;
+        return total + ";" + s + ";" + (String) n;
+    }
+}
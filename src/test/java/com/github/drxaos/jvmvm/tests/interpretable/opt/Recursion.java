@@ -0,0 +1,43 @@
+package com.github.drxaos.jvmvm.tests.interpretable.opt;
+
+public class Recursion {
+    static int fib(int n) {
+        return n < 2 ? n : fib(n - 1) + fib(n - 2);
+    }
+
+    static long deep(int n, long acc) {
+        if (n == 0) throw new IllegalStateException("" + acc);
+        return deep(n - 1, acc * 31 + n);
+    }
+
+    static int sum(int[] a, int i) {
+        return i == a.length ? 0 : a[i] + sum(a, i + 1);
+    }
+
+    static int count(int n, int acc) {
+        if (n == 0) return acc;
+        return count(n - 1, acc + n % 3);
+    }
+
+    static int fail(int n) {
+        if (n == 0) throw new IllegalStateException("bottom");
+        return 1 + fail(n - 1);
+    }
+
+    public static String run() {
+        String thrown;
+        try {
+            deep(50, 1);
+            thrown = null;
+        } catch (IllegalStateException e) {
+            thrown = e.getMessage();
+        }
+        String failed;
+        try {
+            failed = "" + fail(20);
+        } catch (IllegalStateException e) {
+            failed = e.getMessage();
+        }
+        return fib(15) + ";" + thrown + ";" + sum(new int[]{3, 1, 4, 1, 5, 9, 2, 6}, 0) + ";" + fib(10) + ";" + count(20000, 0) + ";" + failed;
+    }
+}
@@ -0,0 +1,31 @@
+package com.github.drxaos.jvmvm.tests.interpretable.opt;
+
+public class Statics {
+    static StringBuilder log = new StringBuilder();
+
+    static class Counter {
+        static int count = init();
+
+        static int init() {
+            log.append("C");
+            return 10;
+        }
+    }
+
+    static class Plain {
+        int value = 1;
+
+        static int twice(int x) {
+            return x * 2;
+        }
+    }
+
+    public static String run() {
+        for (int i = 0; i < 3; i++) {
+            log.append(i);
+            Counter.count++;
+            log.append(Plain.twice(new Plain().value));
+        }
+        return log + ";" + Counter.count;
+    }
+}
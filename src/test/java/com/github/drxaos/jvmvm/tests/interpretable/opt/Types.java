@@ -0,0 +1,18 @@
+package com.github.drxaos.jvmvm.tests.interpretable.opt;
+
+public class Types {
+    public static String run() {
+        byte[] b = new byte[4];
+        boolean[] z = new boolean[4];
+        String s = "a1b2";
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            b[i] = (byte) (c * 3);
+            z[i] = Character.isDigit(c);
+            if (z[i]) n += b[i];
+        }
+        long l = s.hashCode() * 3L;
+        return n + ";" + b[0] + ";" + z[1] + ";" + l;
+    }
+}